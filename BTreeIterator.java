@@ -0,0 +1,88 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A fail-fast iterator over a range of the strings of a StringBTreeSet. It walks the linked leaves of the tree
+ * from a starting key until the end of the range, so each string costs an array read and (when the range has
+ * an end) one comparison.
+ */
+class BTreeIterator implements Iterator<String> {
+
+    /** the set */
+    private final StringBTreeSet set;
+
+    /** the leaf of the next string (null once the leaves ran out) */
+    private BTreeNode leaf;
+
+    /** the index of the next string in its leaf */
+    private int index;
+
+    /** the string the range ends before (null for no end) */
+    private final String to;
+
+    /** the packed first chars of the end of the range */
+    private final long toPrefix;
+
+    /** the modCount of the set when the iterator was created */
+    private final int expectedModCount;
+
+
+    /**
+     * Creates an iterator over the strings of a set from a position in a leaf up to the end of a range
+     * @param set  the set
+     * @param leaf  the leaf of the first string
+     * @param index  the index of the first string in the leaf (may be the number of keys of the leaf, then the
+     *               range starts in the next leaf)
+     * @param to  the string the range ends before, or null to run to the last string of the set
+     */
+    BTreeIterator(StringBTreeSet set, BTreeNode leaf, int index, String to) {
+        this.set = set;
+        this.leaf = leaf;
+        this.index = index;
+        this.to = to;
+        this.toPrefix = to == null ? 0 : BTreeNode.prefix(to);
+        this.expectedModCount = set.modCount();
+        skipExhaustedLeaves();
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        if (set.modCount() != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (leaf == null) {
+            return false;
+        }
+        if (to == null) {
+            return true;
+        }
+        int cmp = Long.compare(leaf.prefixes[index], toPrefix);
+        return cmp < 0 || cmp == 0 && leaf.keys[index].compareTo(to) < 0;
+    }
+
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String value = leaf.keys[index++];
+        skipExhaustedLeaves();
+        return value;
+    }
+
+
+    /**
+     * Moves past the end of the current leaf (and past empty leaves) to the first string of the next one
+     */
+    private void skipExhaustedLeaves() {
+        while (leaf != null && index == leaf.count) {
+            leaf = leaf.next;
+            index = 0;
+        }
+    }
+
+
+}
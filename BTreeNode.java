@@ -0,0 +1,174 @@
+import java.util.Arrays;
+
+/**
+ * a node of StringBTreeSet. A leaf holds up to MAX_KEYS sorted strings and links to the next leaf; an inner
+ * node holds up to MAX_KEYS sorted separators and one child more, where child i holds the strings from
+ * separator i - 1 (inclusive) to separator i (exclusive). Next to each key the node keeps its first four chars
+ * packed in a long, so a binary search mostly compares longs of one array instead of reaching into the strings.
+ */
+class BTreeNode {
+
+    /** the largest number of keys of a node */
+    static final int MAX_KEYS = 64;
+
+    /** the smallest number of keys of a node other than the root */
+    static final int MIN_KEYS = MAX_KEYS / 2;
+
+    /** the keys (one spare cell, so a node can overflow by one key before it is split) */
+    final String[] keys = new String[MAX_KEYS + 1];
+
+    /** the packed first chars of each key (see prefix) */
+    final long[] prefixes = new long[MAX_KEYS + 1];
+
+    /** the children of an inner node (null in a leaf) */
+    final BTreeNode[] children;
+
+    /** the number of keys */
+    int count = 0;
+
+    /** the next leaf (null in the last leaf and in inner nodes) */
+    BTreeNode next;
+
+
+    /**
+     * Constructs an empty node
+     * @param leaf  true for a leaf, false for an inner node
+     */
+    BTreeNode(boolean leaf) {
+        children = leaf ? null : new BTreeNode[MAX_KEYS + 2];
+    }
+
+
+    /**
+     * @return true iff this node is a leaf
+     */
+    boolean isLeaf() {
+        return children == null;
+    }
+
+
+    /**
+     * Packs the first four chars of a string in a long, so that a smaller long means a smaller string (by
+     * compareTo). Equal longs say nothing: the strings have to be compared.
+     * @param key  the string
+     * @return the packed chars (missing chars count as 0), with the sign bit flipped to compare them unsigned
+     */
+    static long prefix(String key) {
+        long prefix = 0;
+        int chars = Math.min(4, key.length());
+        for (int i = 0; i < chars; i++) {
+            prefix |= (long) key.charAt(i) << (48 - 16 * i);
+        }
+        return prefix ^ Long.MIN_VALUE;
+    }
+
+
+    /**
+     * Binary searches the keys of this node
+     * @param key  the key to look for
+     * @param prefix  the prefix of the key
+     * @return the index of the key, or (-(insertion point) - 1) if it is not in the node
+     */
+    int search(String key, long prefix) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compare(prefixes[mid], prefix);
+            if (cmp == 0) {
+                cmp = keys[mid].compareTo(key);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+
+    /**
+     * @param key  a key
+     * @param prefix  the prefix of the key
+     * @return the index of the child of this inner node whose range holds the key
+     */
+    int childIndex(String key, long prefix) {
+        int index = search(key, prefix);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+
+    /**
+     * Inserts a key at an index, moving the following keys one cell right
+     * @param index  the index
+     * @param key  the key
+     * @param prefix  the prefix of the key
+     */
+    void insertKey(int index, String key, long prefix) {
+        System.arraycopy(keys, index, keys, index + 1, count - index);
+        System.arraycopy(prefixes, index, prefixes, index + 1, count - index);
+        keys[index] = key;
+        prefixes[index] = prefix;
+        count++;
+    }
+
+
+    /**
+     * Removes the key at an index, moving the following keys one cell left
+     * @param index  the index
+     */
+    void removeKey(int index) {
+        count--;
+        System.arraycopy(keys, index + 1, keys, index, count - index);
+        System.arraycopy(prefixes, index + 1, prefixes, index, count - index);
+        keys[count] = null;
+    }
+
+
+    /**
+     * Inserts a child of this inner node at an index, moving the following children one cell right
+     * @param index  the index
+     * @param child  the child
+     */
+    void insertChild(int index, BTreeNode child) {
+        System.arraycopy(children, index, children, index + 1, count + 1 - index);
+        children[index] = child;
+    }
+
+
+    /**
+     * Removes the child of this inner node at an index, moving the following children one cell left (call
+     * before removing the key that separates it)
+     * @param index  the index
+     */
+    void removeChild(int index) {
+        System.arraycopy(children, index + 1, children, index, count - index);
+        children[count] = null;
+    }
+
+
+    /**
+     * Moves the keys of this node from an index on to the end of another node. In an inner node the children
+     * from the same index on move too, after the last child of the other node, which must have as many
+     * children as keys (a new node, or one that was just given the separator key).
+     * @param from  the index of the first key to move
+     * @param to  the node to append them to
+     */
+    void moveTail(int from, BTreeNode to) {
+        int moved = count - from;
+        System.arraycopy(keys, from, to.keys, to.count, moved);
+        System.arraycopy(prefixes, from, to.prefixes, to.count, moved);
+        if (children != null) {
+            System.arraycopy(children, from, to.children, to.count, moved + 1);
+            Arrays.fill(children, from, count + 1, null);
+        }
+        Arrays.fill(keys, from, count, null);
+        to.count += moved;
+        count = from;
+    }
+
+
+}
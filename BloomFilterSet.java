@@ -0,0 +1,292 @@
+import java.util.Spliterator;
+
+/**
+ * Wraps a SimpleSet with a blocked Bloom filter, so most lookups of strings that are not in the set are
+ * answered without touching the set. The filter is an array of 512 bit blocks (one cache line each); a string
+ * sets HASHES bits in the block its hash selects, so a lookup reads a single cache line.
+ * The filter is kept in sync on add. It can't forget a deleted string, so after many deletes, or when the set
+ * outgrows the filter, the filter is rebuilt from the strings of the set. A set that can't be iterated (see
+ * SetAlgebra) is only guarded until it outgrows the filter it was created with.
+ * The filter can be turned off and on per instance, and it reports its false-positive rate.
+ */
+public class BloomFilterSet implements SimpleSet {
+
+    /** number of bits of a block */
+    private static final int BLOCK_BITS = 512;
+
+    /** number of longs of a block */
+    private static final int BLOCK_LONGS = BLOCK_BITS / Long.SIZE;
+
+    /** number of filter bits per string */
+    private static final int BITS_PER_STRING = 10;
+
+    /** number of bits a string sets in its block */
+    private static final int HASHES = 6;
+
+    /** the smallest number of strings the filter is sized for */
+    private static final int MIN_EXPECTED_SIZE = 64;
+
+    /** the wrapped set */
+    private final SimpleSet set;
+
+    /** the blocks of the filter */
+    private long[] bits;
+
+    /** number of blocks minus one (the number of blocks is a power of two) */
+    private int blockMask;
+
+    /** the number of strings the filter is sized for */
+    private int expectedSize;
+
+    /** number of strings added to the filter since it was built */
+    private int inserted = 0;
+
+    /** number of strings deleted from the set since the filter was built */
+    private int deleted = 0;
+
+    /** true if the filter holds every string of the set (false once it can't be rebuilt) */
+    private boolean valid = true;
+
+    /** true if lookups consult the filter */
+    private boolean enabled = true;
+
+    /** number of lookups the filter answered (strings certainly not in the set) */
+    private long filteredLookups = 0;
+
+    /** number of lookups the filter let through for strings that are not in the set */
+    private long falsePositives = 0;
+
+
+    /**
+     * Wraps a set with a filter sized for its current size (at least 64 strings)
+     * @param set  The set to wrap
+     */
+    public BloomFilterSet(SimpleSet set) {
+        this(set, set.size());
+    }
+
+
+    /**
+     * Wraps a set with a filter sized for a number of strings
+     * @param set  The set to wrap
+     * @param expectedSize  The number of strings the filter is sized for
+     */
+    public BloomFilterSet(SimpleSet set, int expectedSize) {
+        this.set = set;
+        allocate(Math.max(expectedSize, set.size()));
+        if (set.size() > 0) {
+            rebuild();
+        }
+    }
+
+
+    /**
+     * Add a specified element to the set if it's not already in it.
+     *
+     * @param newValue New value to add to the set
+     * @return False iff newValue already exists in the set
+     */
+    @Override
+    public boolean add(String newValue) {
+        if (!set.add(newValue)) {
+            return false;
+        }
+        if (valid) {
+            if (inserted == expectedSize) {  // the filter is full, rebuild it (with the new value) twice as big
+                allocate(2 * expectedSize);
+                rebuild();
+            } else {
+                put(newValue);
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Look for a specified value in the set. When the filter is on, a value whose bits are not all set is
+     * not in the set, and the set is not searched.
+     *
+     * @param searchVal Value to search for
+     * @return True iff searchVal is found in the set
+     */
+    @Override
+    public boolean contains(String searchVal) {
+        if (!enabled || !valid) {
+            return set.contains(searchVal);
+        }
+        if (!mightContain(searchVal)) {
+            filteredLookups++;
+            return false;
+        }
+        boolean found = set.contains(searchVal);
+        if (!found) {
+            falsePositives++;
+        }
+        return found;
+    }
+
+
+    /**
+     * Remove the input element from the set. The filter is rebuilt once half of the strings it holds were
+     * deleted, since their bits make other lookups pass.
+     *
+     * @param toDelete Value to delete
+     * @return True iff toDelete is found and deleted
+     */
+    @Override
+    public boolean delete(String toDelete) {
+        if (!set.delete(toDelete)) {
+            return false;
+        }
+        deleted++;
+        if (valid && deleted > inserted / 2 && SetAlgebra.isIterable(set)) {
+            allocate(set.size());
+            rebuild();
+        }
+        return true;
+    }
+
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    @Override
+    public int size() {
+        return set.size();
+    }
+
+
+    /**
+     * Turns the filter on or off for this set. It is kept in sync while it is off.
+     * @param enabled  true to consult the filter on lookups
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+
+    /**
+     * @return True iff lookups are answered by the filter when it can (it is on and it holds the whole set)
+     */
+    public boolean isActive() {
+        return enabled && valid;
+    }
+
+
+    /**
+     * @return the fraction of the lookups of strings that are not in the set that the filter let through
+     * (0 if there were none)
+     */
+    public double getFalsePositiveRate() {
+        long misses = filteredLookups + falsePositives;
+        return misses == 0 ? 0 : (double) falsePositives / misses;
+    }
+
+
+    /**
+     * @return the false-positive rate expected from the number of strings in the filter and its size,
+     * (1 - e^(-kn/m))^k for k bits per string, n strings and m bits (blocking makes it a little higher)
+     */
+    public double getExpectedFalsePositiveRate() {
+        double setBitsFraction = 1 - Math.exp(-(double) HASHES * inserted / ((long) bits.length * Long.SIZE));
+        return Math.pow(setBitsFraction, HASHES);
+    }
+
+
+    /**
+     * @return the number of lookups the filter answered without searching the set
+     */
+    public long getFilteredLookups() {
+        return filteredLookups;
+    }
+
+
+    /** sets the counters of getFalsePositiveRate and getFilteredLookups back to zero */
+    public void resetStatistics() {
+        filteredLookups = 0;
+        falsePositives = 0;
+    }
+
+
+    /**
+     * Allocates a new, empty filter
+     * @param size  the number of strings to size the filter for
+     */
+    private void allocate(int size) {
+        expectedSize = Math.max(size, MIN_EXPECTED_SIZE);
+        long neededBits = (long) expectedSize * BITS_PER_STRING;
+        int blocks = Integer.highestOneBit((int) Math.min((neededBits + BLOCK_BITS - 1) / BLOCK_BITS, 1 << 24));
+        if ((long) blocks * BLOCK_BITS < neededBits && blocks < 1 << 24) {
+            blocks <<= 1;
+        }
+        bits = new long[blocks * BLOCK_LONGS];
+        blockMask = blocks - 1;
+        inserted = 0;
+        deleted = 0;
+    }
+
+
+    /**
+     * Puts every string of the set in the (empty) filter, or marks the filter invalid if the set can't be
+     * iterated
+     */
+    private void rebuild() {
+        Spliterator<String> strings = SetAlgebra.spliterator(set);
+        if (strings == null) {
+            valid = false;
+            return;
+        }
+        strings.forEachRemaining(this::put);
+    }
+
+
+    /**
+     * Sets the bits of a string
+     * @param value  the string
+     */
+    private void put(String value) {
+        long h = mix(value.hashCode());
+        int base = ((int) (h >>> 32) & blockMask) * BLOCK_LONGS;
+        long g = mix(h);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) (g >>> (9 * i)) & (BLOCK_BITS - 1);  // 9 bits of the second hash per bit
+            bits[base + (bit >>> 6)] |= 1L << bit;
+        }
+        inserted++;
+    }
+
+
+    /**
+     * @param value  a string
+     * @return False if the string was certainly not put in the filter
+     */
+    private boolean mightContain(String value) {
+        long h = mix(value.hashCode());
+        int base = ((int) (h >>> 32) & blockMask) * BLOCK_LONGS;
+        long g = mix(h);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) (g >>> (9 * i)) & (BLOCK_BITS - 1);
+            if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @param x  a value
+     * @return the bits of the value mixed by the murmur3 64 bit finalizer
+     */
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+
+}
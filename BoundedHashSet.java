@@ -0,0 +1,524 @@
+import java.util.Arrays;
+
+/**
+ * a hash-set of bounded size, for caches of recently seen strings (e.g. to drop duplicate ids). Extends
+ * SimpleHashSet. The set holds at most a maximal number of strings, and optionally at most a byte budget of
+ * them (2 bytes per char); an add that crosses a bound evicts other strings, so the table never grows.
+ * The strings live in a pool of entries that is allocated once: the table holds the first entry of each
+ * bucket, and int arrays chain the entries of a bucket and link them in access order, so no access allocates.
+ * With LRU eviction the least recently used string goes first. With TINY_LFU eviction (W-TinyLFU) a new string
+ * enters a small LRU window; a string that leaves the window is only kept in the main queues if a
+ * FrequencySketch saw it more often than the string it would evict. The main queues are a segmented LRU: a
+ * string that is hit again in the probation queue moves up to the protected queue. The set counts hits (a
+ * contains that finds its value, or an add of a value that is in the set), misses and evictions.
+ */
+public class BoundedHashSet extends SimpleHashSet {
+
+    /**
+     * the ways a BoundedHashSet picks the strings it evicts
+     */
+    public enum EvictionPolicy {
+        /** evict the least recently used string */
+        LRU,
+        /** keep the strings that were used more often recently (W-TinyLFU) */
+        TINY_LFU
+    }
+
+    /** the queue new strings enter (the only queue with LRU eviction) */
+    private static final int WINDOW = 0;
+
+    /** the main queue of the strings that were used once since they left the window */
+    private static final int PROBATION = 1;
+
+    /** the main queue of the strings that were used again in the probation queue */
+    private static final int PROTECTED = 2;
+
+    /** the number of queues */
+    private static final int QUEUES = 3;
+
+    /** the end of a bucket chain, and an empty bucket */
+    private static final int NONE = -1;
+
+    /** the maximal number of strings */
+    private final int maxEntries;
+
+    /** the maximal number of bytes of the strings */
+    private final long maxBytes;
+
+    /** the eviction policy */
+    private final EvictionPolicy policy;
+
+    /** the maximal number of strings in the window queue */
+    private final int windowMax;
+
+    /** the maximal number of strings in the protected queue */
+    private final int protectedMax;
+
+    /** the estimated access frequencies (null with LRU eviction) */
+    private final FrequencySketch sketch;
+
+    /** the first entry of each bucket (NONE for an empty bucket) */
+    private final int[] buckets;
+
+    /** the string of each entry (null for a free entry) */
+    private final String[] values;
+
+    /** the hash of the string of each entry */
+    private final int[] hashes;
+
+    /** the next entry of the bucket of each entry, or the next free entry of a free one */
+    private final int[] chain;
+
+    /** the previous entry in the queue of each entry. The entries after the pool are the queues' sentinels */
+    private final int[] prev;
+
+    /** the next entry in the queue of each entry. A queue runs from the least to the most recently used */
+    private final int[] next;
+
+    /** the queue of each entry */
+    private final byte[] queueOf;
+
+    /** the number of strings in each queue */
+    private final int[] queueSize = new int[QUEUES];
+
+    /** the first free entry of the pool */
+    private int freeEntry;
+
+    /** the current number of elements */
+    private int size = 0;
+
+    /** the number of bytes of the current elements */
+    private long bytes = 0;
+
+    /** the number of lookups that found their value */
+    private long hits = 0;
+
+    /** the number of lookups that did not find their value */
+    private long misses = 0;
+
+    /** the number of strings that were evicted */
+    private long evictions = 0;
+
+
+    /**
+     * Constructs a new, empty set that holds at most a number of strings and evicts the least recently used.
+     * @param maxEntries  The maximal number of strings
+     */
+    public BoundedHashSet(int maxEntries) {
+        this(maxEntries, EvictionPolicy.LRU);
+    }
+
+
+    /**
+     * Constructs a new, empty set that holds at most a number of strings.
+     * @param maxEntries  The maximal number of strings
+     * @param policy  The eviction policy
+     */
+    public BoundedHashSet(int maxEntries, EvictionPolicy policy) {
+        this(maxEntries, Long.MAX_VALUE, policy);
+    }
+
+
+    /**
+     * Constructs a new, empty set that holds at most a number of strings, of at most a number of bytes.
+     * @param maxEntries  The maximal number of strings (the size of the pool of entries)
+     * @param maxBytes  The maximal number of bytes of the strings, 2 per char
+     * @param policy  The eviction policy
+     */
+    public BoundedHashSet(int maxEntries, long maxBytes, EvictionPolicy policy) {
+        this(maxEntries, maxBytes, policy, SpreadingHasher.INSTANCE);
+    }
+
+
+    /**
+     * Constructs a new, empty set that holds at most a number of strings, of at most a number of bytes, with the
+     * specified hash-mixing stage. The table is sized once for the maximal number of strings with the default
+     * upper load factor (0.75), and never shrinks.
+     * @param maxEntries  The maximal number of strings (the size of the pool of entries)
+     * @param maxBytes  The maximal number of bytes of the strings, 2 per char
+     * @param policy  The eviction policy
+     * @param hasher  The hash-mixing stage (e.g. a SipHasher for untrusted input)
+     */
+    public BoundedHashSet(int maxEntries, long maxBytes, EvictionPolicy policy, StringHasher hasher) {
+        super(0.75f, 0.25f, hasher);
+        if (maxEntries < 1 || maxEntries == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("illegal maximal number of strings: " + maxEntries);
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("illegal byte budget: " + maxBytes);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        if (policy == EvictionPolicy.LRU) {
+            windowMax = maxEntries;
+            protectedMax = 0;
+            sketch = null;
+        } else {
+            windowMax = Math.max(1, maxEntries / 100);
+            protectedMax = (maxEntries - windowMax) / 5 * 4;
+            sketch = new FrequencySketch(maxEntries);
+        }
+        int pool = maxEntries + 1;  // an add takes an entry before it evicts one
+        buckets = new int[capacityFor(pool)];
+        capacityMinusOne = buckets.length - 1;
+        values = new String[pool];
+        hashes = new int[pool];
+        chain = new int[pool];
+        prev = new int[pool + QUEUES];
+        next = new int[pool + QUEUES];
+        queueOf = new byte[pool];
+        clear();
+    }
+
+
+    /**
+     * Add a specified element to the set if it's not already in it, evicting other strings if the set is full.
+     * A value heavier than the whole byte budget is counted as evicted right away.
+     *
+     * @param newValue New value to add to the set
+     * @return False iff newValue already exists in the set
+     */
+    @Override
+    public boolean add(String newValue) {
+        int hash = hash(newValue);
+        int entry = lookup(newValue, hash);
+        if (entry != NONE) {  // to not allow duplicates
+            return false;
+        }
+        long weight = weigh(newValue);
+        if (weight > maxBytes) {
+            evictions++;
+            return true;
+        }
+        entry = freeEntry;
+        freeEntry = chain[entry];
+        values[entry] = newValue;
+        hashes[entry] = hash;
+        int bucket = clamp(hash);
+        chain[entry] = buckets[bucket];
+        buckets[bucket] = entry;
+        link(entry, WINDOW);
+        size++;
+        bytes += weight;
+        int candidate = NONE;
+        if (queueSize[WINDOW] > windowMax) {  // the least recently used string of the window asks for admission
+            candidate = first(WINDOW);
+            move(candidate, PROBATION);
+        }
+        evict(candidate);
+        return true;
+    }
+
+
+    /**
+     * Look for a specified value in the set. A value that is found counts as used.
+     *
+     * @param searchVal Value to search for
+     * @return True iff searchVal is found in the set
+     */
+    @Override
+    public boolean contains(String searchVal) {
+        return lookup(searchVal, hash(searchVal)) != NONE;
+    }
+
+
+    /**
+     * Remove the input element from the set. A delete is not counted as a hit, a miss or an eviction.
+     *
+     * @param toDelete Value to delete
+     * @return True iff toDelete is found and deleted
+     */
+    @Override
+    public boolean delete(String toDelete) {
+        int entry = find(toDelete, hash(toDelete));
+        if (entry == NONE) {
+            return false;
+        }
+        remove(entry);
+        return true;
+    }
+
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * The current capacity of the table.
+     * @return  The current capacity (number of cells) of the table.
+     */
+    @Override
+    public int capacity() {
+        return buckets.length;
+    }
+
+
+    /**
+     * Removes every string from the set. The access frequencies are forgotten, the counters are kept.
+     */
+    public void clear() {
+        Arrays.fill(buckets, NONE);
+        Arrays.fill(values, null);
+        for (int i = 0; i < chain.length; i++) {
+            chain[i] = i + 1 < chain.length ? i + 1 : NONE;
+        }
+        freeEntry = 0;
+        for (int queue = 0; queue < QUEUES; queue++) {
+            int sentinel = values.length + queue;
+            prev[sentinel] = sentinel;
+            next[sentinel] = sentinel;
+            queueSize[queue] = 0;
+        }
+        if (sketch != null) {
+            sketch.clear();
+        }
+        size = 0;
+        bytes = 0;
+    }
+
+
+    /**
+     * @return The maximal number of strings in the set
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+
+    /**
+     * @return The maximal number of bytes of the strings in the set (Long.MAX_VALUE if it is not bounded)
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+
+    /**
+     * @return The number of bytes of the strings in the set, 2 per char
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+
+    /**
+     * @return The eviction policy of the set
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+
+
+    /**
+     * @return The number of contains calls that found their value and adds of values that were in the set
+     */
+    public long getHitCount() {
+        return hits;
+    }
+
+
+    /**
+     * @return The number of contains calls that did not find their value and adds of new values
+     */
+    public long getMissCount() {
+        return misses;
+    }
+
+
+    /**
+     * @return The number of strings that were evicted to keep the set within its bounds
+     */
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+
+    /**
+     * @return The hits out of all the lookups (0 before the first lookup)
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+
+    /**
+     * Sets the hit, miss and eviction counters back to 0
+     */
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+
+    /**
+     * Looks for a value on behalf of a contains or an add: counts the access, and marks a value that is found
+     * as used.
+     * @param value  the value to look for
+     * @param hash  the hash of the value
+     * @return the entry of the value, or NONE if it is not in the set
+     */
+    private int lookup(String value, int hash) {
+        if (sketch != null) {
+            sketch.increment(hash);
+        }
+        int entry = find(value, hash);
+        if (entry == NONE) {
+            misses++;
+            return NONE;
+        }
+        hits++;
+        switch (queueOf[entry]) {
+            case PROBATION:  // used again: move up to the protected queue, and make room there
+                move(entry, PROTECTED);
+                if (queueSize[PROTECTED] > protectedMax) {
+                    move(first(PROTECTED), PROBATION);
+                }
+                break;
+            default:  // the window and the protected queue are plain LRU queues
+                move(entry, queueOf[entry]);
+                break;
+        }
+        return entry;
+    }
+
+
+    /**
+     * Look for a value in its bucket
+     * @param value  the value to look for
+     * @param hash  the hash of the value
+     * @return the entry of the value, or NONE if it is not in the set
+     */
+    private int find(String value, int hash) {
+        int entry = buckets[clamp(hash)];
+        int compared = 0;
+        while (entry != NONE) {
+            compared++;
+            if (hashes[entry] == hash && values[entry].equals(value)) {
+                break;
+            }
+            entry = chain[entry];
+        }
+        HashSetMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.recordProbe(compared);
+        }
+        return entry;
+    }
+
+
+    /**
+     * Evicts strings until the set is within its bounds. The victim is the least recently used string of the
+     * probation queue (or of the protected queue, or of the window, when the queues before it are empty). If a
+     * string just left the window, it is evicted instead of the victim unless it was used more often.
+     * @param candidate  the entry that just moved from the window to the probation queue, or NONE
+     */
+    private void evict(int candidate) {
+        while (size > maxEntries || bytes > maxBytes) {
+            int victim = first(PROBATION);
+            if (victim == NONE) {
+                victim = first(PROTECTED) != NONE ? first(PROTECTED) : first(WINDOW);
+            }
+            if (candidate != NONE && candidate != victim
+                    && sketch.frequency(hashes[candidate]) <= sketch.frequency(hashes[victim])) {
+                victim = candidate;
+            }
+            if (victim == candidate) {
+                candidate = NONE;
+            }
+            remove(victim);
+            evictions++;
+        }
+    }
+
+
+    /**
+     * Removes the string of an entry from its bucket and its queue, and frees the entry
+     * @param entry  the entry
+     */
+    private void remove(int entry) {
+        int bucket = clamp(hashes[entry]);
+        if (buckets[bucket] == entry) {
+            buckets[bucket] = chain[entry];
+        } else {
+            int before = buckets[bucket];
+            while (chain[before] != entry) {
+                before = chain[before];
+            }
+            chain[before] = chain[entry];
+        }
+        unlink(entry);
+        bytes -= weigh(values[entry]);
+        values[entry] = null;
+        chain[entry] = freeEntry;
+        freeEntry = entry;
+        size--;
+    }
+
+
+    /**
+     * @param queue  a queue
+     * @return the least recently used entry of the queue, or NONE if it is empty
+     */
+    private int first(int queue) {
+        int sentinel = values.length + queue;
+        return next[sentinel] == sentinel ? NONE : next[sentinel];
+    }
+
+
+    /**
+     * Moves an entry to the most recently used end of a queue (its own queue or another)
+     * @param entry  the entry
+     * @param queue  the queue
+     */
+    private void move(int entry, int queue) {
+        unlink(entry);
+        link(entry, queue);
+    }
+
+
+    /**
+     * Puts an entry at the most recently used end of a queue
+     * @param entry  an entry that is in no queue
+     * @param queue  the queue
+     */
+    private void link(int entry, int queue) {
+        int sentinel = values.length + queue;
+        int last = prev[sentinel];
+        next[last] = entry;
+        prev[entry] = last;
+        next[entry] = sentinel;
+        prev[sentinel] = entry;
+        queueOf[entry] = (byte) queue;
+        queueSize[queue]++;
+    }
+
+
+    /**
+     * Takes an entry out of its queue
+     * @param entry  the entry
+     */
+    private void unlink(int entry) {
+        next[prev[entry]] = next[entry];
+        prev[next[entry]] = prev[entry];
+        queueSize[queueOf[entry]]--;
+    }
+
+
+    /**
+     * @param value  a string
+     * @return the number of bytes the string counts for in the byte budget
+     */
+    private static long weigh(String value) {
+        return 2L * value.length();
+    }
+
+
+}
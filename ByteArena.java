@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only store of UTF-8 strings outside the Java heap. The strings are kept in chunks of 1MB, either
+ * direct ByteBuffers or chunks of a memory-mapped file, as records of a 4 byte length followed by the bytes.
+ * A record is referred to by a long: the index of its chunk in the high 32 bits and its position in the chunk
+ * in the low 32 bits. Records are never moved or freed one by one; the arena only counts the bytes of freed
+ * records, so its owner can copy the live records to a new arena when too many bytes are garbage.
+ */
+public class ByteArena {
+
+    /** the size of a chunk (a larger record gets a chunk of its own size) */
+    static final int CHUNK_SIZE = 1 << 20;
+
+    /** the size of the length that comes before the bytes of a record */
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+    /** the chunks */
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    /** the file the chunks are mapped from (null for chunks of direct memory) */
+    private final FileChannel channel;
+
+    /** the size of the mapped part of the file */
+    private long mappedSize = 0;
+
+    /** the position of the next record in the last chunk */
+    private int position = 0;
+
+    /** the number of bytes taken by records */
+    private long usedBytes = 0;
+
+    /** the number of bytes taken by freed records */
+    private long garbageBytes = 0;
+
+
+    /**
+     * Constructs an arena in direct (off-heap) memory
+     */
+    public ByteArena() {
+        this.channel = null;
+    }
+
+
+    /**
+     * Constructs an arena in a memory-mapped file (the file is created or truncated)
+     * @param file  the file
+     * @throws UncheckedIOException if the file can't be opened
+     */
+    public ByteArena(Path file) {
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Appends a record holding the UTF-8 encoding of a string
+     * @param s  the string
+     * @param length  the length of its UTF-8 encoding
+     * @return the reference of the record
+     */
+    public long append(CharSequence s, int length) {
+        long ref = allocate(length);
+        Utf8.encode(s, chunk(ref), position(ref) + HEADER_SIZE);
+        return ref;
+    }
+
+
+    /**
+     * Appends a record holding UTF-8 bytes
+     * @param bytes  an array holding the bytes
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @return the reference of the record
+     */
+    public long append(byte[] bytes, int offset, int length) {
+        long ref = allocate(length);
+        ByteBuffer chunk = chunk(ref);
+        int start = position(ref) + HEADER_SIZE;
+        for (int i = 0; i < length; i++) {
+            chunk.put(start + i, bytes[offset + i]);
+        }
+        return ref;
+    }
+
+
+    /**
+     * Appends a copy of a record of another arena
+     * @param from  the other arena
+     * @param ref  the reference of the record in the other arena
+     * @return the reference of the copy
+     */
+    public long copy(ByteArena from, long ref) {
+        int length = from.length(ref);
+        ByteBuffer source = from.chunk(ref);
+        int sourceStart = from.start(ref);
+        long copy = allocate(length);
+        ByteBuffer chunk = chunk(copy);
+        int start = start(copy);
+        for (int i = 0; i < length; i++) {
+            chunk.put(start + i, source.get(sourceStart + i));
+        }
+        return copy;
+    }
+
+
+    /**
+     * Counts a record as garbage
+     * @param ref  the reference of the record
+     */
+    public void free(long ref) {
+        garbageBytes += HEADER_SIZE + length(ref);
+    }
+
+
+    /**
+     * @param ref  the reference of a record
+     * @return the chunk that holds the record
+     */
+    public ByteBuffer chunk(long ref) {
+        return chunks.get((int) (ref >>> 32));
+    }
+
+
+    /**
+     * @param ref  the reference of a record
+     * @return the position of the first byte of the record in its chunk
+     */
+    public int start(long ref) {
+        return position(ref) + HEADER_SIZE;
+    }
+
+
+    /**
+     * @param ref  the reference of a record
+     * @return the number of bytes of the record
+     */
+    public int length(long ref) {
+        return chunk(ref).getInt(position(ref));
+    }
+
+
+    /**
+     * @return the number of bytes taken by records (including freed ones)
+     */
+    public long usedBytes() {
+        return usedBytes;
+    }
+
+
+    /**
+     * @return the number of bytes taken by freed records
+     */
+    public long garbageBytes() {
+        return garbageBytes;
+    }
+
+
+    /**
+     * @return True iff the chunks are mapped from a file
+     */
+    public boolean isMapped() {
+        return channel != null;
+    }
+
+
+    /**
+     * Closes the file of a file-mapped arena (its mapped chunks are released by the GC)
+     */
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+
+    /**
+     * @param ref  the reference of a record
+     * @return the position of the record (its length) in its chunk
+     */
+    private static int position(long ref) {
+        return (int) ref;
+    }
+
+
+    /**
+     * Allocates a record and writes its length
+     * @param length  the number of bytes of the record
+     * @return the reference of the record
+     */
+    private long allocate(int length) {
+        int size = HEADER_SIZE + length;
+        if (chunks.isEmpty() || chunks.get(chunks.size() - 1).capacity() - position < size) {
+            chunks.add(newChunk(Math.max(CHUNK_SIZE, size)));
+            position = 0;
+        }
+        long ref = (long) (chunks.size() - 1) << 32 | position;
+        chunks.get(chunks.size() - 1).putInt(position, length);
+        position += size;
+        usedBytes += size;
+        return ref;
+    }
+
+
+    /**
+     * @param size  the size of the chunk
+     * @return a new chunk of direct memory, or the next part of the file mapped to memory
+     */
+    private ByteBuffer newChunk(int size) {
+        if (channel == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        try {
+            ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, mappedSize, size);
+            mappedSize += size;
+            return chunk;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+}
@@ -0,0 +1,93 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * a reusable CharSequence view of UTF-8 bytes, so a hash-set can look up a key that arrives as bytes without
+ * creating a String. The bytes are decoded into a char array that only grows, so after the first few keys
+ * decoding allocates nothing. A slice is overwritten by the next decode, so each thread needs its own.
+ */
+final class CharSlice implements CharSequence {
+
+    /** the decoded chars */
+    private char[] chars = new char[64];
+
+    /** a copy of the bytes of a key read from a ByteBuffer */
+    private byte[] bytes = new byte[64];
+
+    /** the number of decoded chars */
+    private int length = 0;
+
+
+    /**
+     * Decodes UTF-8 bytes into this slice
+     * @param source  an array holding the bytes
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @return this slice, or a new String if the bytes are not well-formed UTF-8 (with the malformed sequences
+     * replaced, as by new String(bytes, UTF_8))
+     */
+    CharSequence decode(byte[] source, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, source.length);
+        if (chars.length < length) {  // a UTF-8 key never has more chars than bytes
+            chars = new char[Math.max(length, 2 * chars.length)];
+        }
+        int decoded = Utf8.decode(source, offset, length, chars);
+        if (decoded == -1) {
+            return new String(source, offset, length, StandardCharsets.UTF_8);
+        }
+        this.length = decoded;
+        return this;
+    }
+
+
+    /**
+     * Decodes UTF-8 bytes stored in a buffer into this slice
+     * @param buffer  the buffer (its position and limit are not changed)
+     * @param position  the position of the first byte in the buffer
+     * @param length  the number of bytes
+     * @return this slice, or a new String if the bytes are not well-formed UTF-8
+     */
+    CharSequence decode(ByteBuffer buffer, int position, int length) {
+        Objects.checkFromIndexSize(position, length, buffer.limit());
+        if (buffer.hasArray()) {
+            return decode(buffer.array(), buffer.arrayOffset() + position, length);
+        }
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, 2 * bytes.length)];
+        }
+        buffer.get(position, bytes, 0, length);
+        return decode(bytes, 0, length);
+    }
+
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+
+    @Override
+    public char charAt(int index) {
+        Objects.checkIndex(index, length);
+        return chars[index];
+    }
+
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        Objects.checkFromToIndex(start, end, length);
+        return new String(chars, start, end - start);
+    }
+
+
+    /**
+     * @return a new String of the decoded chars
+     */
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+
+}
@@ -1,21 +1,74 @@
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * a hash-set based on closed-hashing with quadratic probing.
+ * a hash-set based on closed-hashing with quadratic probing (linear probing when the growth policy allows tables
+ * whose size is not a power of two).
+ * A deleted value leaves a deleted flag, whose cell is reused by a later add. The load that triggers a rehash
+ * counts the deleted flags with the strings, and when the flags are what fills the table, they are cleared in
+ * place (the table keeps its size), so a workload of adds and deletes keeps a constant table and probe length.
  */
-public class ClosedHashSet extends SimpleHashSet {
+public class ClosedHashSet extends SimpleHashSet implements Iterable<String>, SlotTable {
 
-    /** Flag to replace a deleted value */
-    private final String DELETED_FLAG = "";
+    /** Flag to replace a deleted value. A distinct object that is compared by reference, so it can never be
+     * mistaken for a stored empty string */
+    static final String DELETED_FLAG = new String("");
 
-    /** default initial capacity */
-    private final int INITIAL_CAPACITY = 16;
+    /** true if the tables are powers of two and probed quadratically, false if they are probed linearly */
+    private final boolean quadraticProbing = getGrowthPolicy().isPowerOfTwo();
 
     /** the closed table */
     private String [] closedTable;
 
+    /** the hash of the string in each cell of the closed table (compared before calling equals) */
+    private int [] hashes;
+
     /** the current number of elements */
     private int size = 0;
 
+    /** the number of cells of the closed table that hold the deleted flag */
+    private int deletedCells = 0;
+
+    /** the in-place cleanup of deleted flags is used (instead of a bigger table) while the live strings take at
+     * most this fraction of the upper load factor, so the next cleanup is always a quarter of it away */
+    private static final double IN_PLACE_CLEANUP_LIMIT = 0.75;
+
+    /** the total number of cells visited by lookups since the statistics were last reset */
+    private long totalProbes = 0;
+
+    /** the number of lookups since the statistics were last reset */
+    private long lookups = 0;
+
+    /** the longest probe sequence seen by a lookup since the statistics were last reset */
+    private int maxProbeLength = 0;
+
+    /** the smallest array addAll hashes in parallel */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** number of cells of the old table moved by each operation during an incremental rehash */
+    private static final int MIGRATION_STEP = 16;
+
+    /** true if a rehash moves the strings a few cells per operation instead of all at once */
+    private boolean incrementalRehash = false;
+
+    /** the table being emptied during an incremental rehash (null when no rehash is in progress) */
+    private String [] oldTable;
+
+    /** the hashes of the strings in the old table */
+    private int [] oldHashes;
+
+    /** the index of the next cell of the old table to move */
+    private int migrateIndex;
+
+    /** the number of successful adds and deletes, so the iterators can fail fast */
+    private int modCount = 0;
+
 
     /**
      * A default constructor. Constructs a new, empty table with default initial capacity (16),
@@ -24,6 +77,7 @@ public class ClosedHashSet extends SimpleHashSet {
     public ClosedHashSet(){
         super(0.75f, 0.25f);
         closedTable = new String[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
     }
 
 
@@ -35,26 +89,214 @@ public class ClosedHashSet extends SimpleHashSet {
     public ClosedHashSet(float upperLoadFactor, float lowerLoadFactor) {
         super(upperLoadFactor, lowerLoadFactor);
         closedTable = new String[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+    }
+
+
+    /**
+     * Constructs a new, empty table with the specified load factors and hash-mixing stage, and the default
+     * initial capacity (16).
+     * @param upperLoadFactor  The upper load factor of the hash table
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     * @param hasher  The hash-mixing stage (e.g. a SipHasher for untrusted input)
+     */
+    public ClosedHashSet(float upperLoadFactor, float lowerLoadFactor, StringHasher hasher) {
+        super(upperLoadFactor, lowerLoadFactor, hasher);
+        closedTable = new String[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
     }
 
 
     /**
-     * Data constructor - builds the hash set by adding the elements one by one. Duplicate values should be
-     * ignored. The new table has the default values of initial capacity (16),
+     * Constructs a new, empty table with the default load factors, and a capacity that holds an expected number
+     * of elements without a rehash (so loading them does not double the table again and again).
+     * @param expectedSize  The number of elements the set is expected to hold
+     */
+    public ClosedHashSet(int expectedSize) {
+        this(0.75f, 0.25f, SpreadingHasher.INSTANCE, PowerOfTwoGrowth.INSTANCE, expectedSize);
+    }
+
+
+    /**
+     * Constructs a new, empty table with the specified load factors, hash-mixing stage and growth policy, and
+     * a capacity that holds an expected number of elements without a rehash.
+     * @param upperLoadFactor  The upper load factor of the hash table
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     * @param hasher  The hash-mixing stage (e.g. a SipHasher for untrusted input)
+     * @param growthPolicy  The policy that picks the table sizes (e.g. a FastRangeGrowth for tables of any size)
+     * @param expectedSize  The number of elements the set is expected to hold
+     */
+    public ClosedHashSet(float upperLoadFactor, float lowerLoadFactor, StringHasher hasher,
+                         GrowthPolicy growthPolicy, int expectedSize) {
+        super(upperLoadFactor, lowerLoadFactor, hasher, growthPolicy);
+        int capacity = capacityFor(expectedSize);
+        capacityMinusOne = capacity - 1;
+        closedTable = new String[capacity];
+        hashes = new int[capacity];
+    }
+
+
+    /**
+     * Data constructor - builds the hash set by adding the elements (with addAll, so the table is sized once).
+     * Duplicate values should be ignored. The new table has the default values of
      * upper load factor (0.75), and lower load factor (0.25).
      * @param data  Values to add to the set.
      */
     public ClosedHashSet(java.lang.String[] data){
         this();
-        for (String s: data) {
-            this.add(s);
+        addAll(data);
+    }
+
+
+    /**
+     * Restores a table written by SetSnapshot, cell by cell, without rehashing it.
+     * @param upperLoadFactor  The upper load factor of the hash table
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     * @param hasher  The hash-mixing stage the table was built with
+     * @param table  the cells of the table (null for an empty cell, DELETED_FLAG for a deleted one)
+     * @param tableHashes  the hashes of the strings in the table
+     * @param size  the number of strings in the table
+     */
+    ClosedHashSet(float upperLoadFactor, float lowerLoadFactor, StringHasher hasher, String[] table,
+                  int[] tableHashes, int size) {
+        super(upperLoadFactor, lowerLoadFactor, hasher);
+        capacityMinusOne = table.length - 1;
+        closedTable = table;
+        hashes = tableHashes;
+        this.size = size;
+        for (String cell : table) {
+            if (cell == DELETED_FLAG) {
+                deletedCells++;
+            }
         }
     }
 
 
-    /** calculate the index of the value in the table by the quadratic probing */
-    private int getIndex(String string, int i){
-        return (string.hashCode() + (i * i + i) / 2) & capacityMinusOne;
+    /** calculate the index of the value in a table by the quadratic probing */
+    static int getIndex(int hash, int i, int tableMinusOne){
+        return (hash + (i * i + i) / 2) & tableMinusOne;
+    }
+
+
+    /**
+     * calculate the index of the value in a table of this set: quadratic probing on a power of two table, and
+     * linear probing from the home cell on a table of another size (where the triangular sequence would not
+     * visit every cell)
+     * @param hash  the hash of the value
+     * @param i  the number of cells probed before this one (smaller than capacity)
+     * @param capacity  the length of the table
+     * @return the index of the i-th cell of the probe sequence
+     */
+    private int probe(int hash, int i, int capacity) {
+        if (quadraticProbing) {
+            return getIndex(hash, i, capacity - 1);
+        }
+        int index = clamp(hash, capacity) + i;
+        return index < capacity ? index : index - capacity;
+    }
+
+
+    /**
+     * Follows the probe sequence of the value from its home cell, skipping deleted cells, until the value or
+     * an empty (null) cell is found.
+     * @param table  the table to search (the closed table, or the old table during an incremental rehash)
+     * @param tableHashes  the hashes of the strings in the table
+     * @param searchVal  the value to look for
+     * @param hash  the hash of the value
+     * @return the index of the cell holding the value, or -1 if it is not in the table
+     */
+    private int findIndex(String[] table, int[] tableHashes, String searchVal, int hash) {
+        for (int i = 0; i < table.length; i++) {
+            int index = probe(hash, i, table.length);
+            String cell = table[index];
+            if (cell == null) {
+                recordProbe(i + 1);  // an empty cell ends the probe sequence
+                return -1;
+            }
+            if (tableHashes[index] == hash && cell != DELETED_FLAG && cell.equals(searchVal)) {
+                recordProbe(i + 1);
+                return index;
+            }
+        }
+        recordProbe(table.length);  // every cell was visited (no empty cell left)
+        return -1;
+    }
+
+
+    /**
+     * Follows the probe sequence of a sequence of chars like findIndex of a string, comparing the chars with
+     * the strings of the cells in place.
+     * @param table  the table to search (the closed table, or the old table during an incremental rehash)
+     * @param tableHashes  the hashes of the strings in the table
+     * @param searchVal  the chars to look for
+     * @param hash  the hash of the chars
+     * @return the index of the cell holding the string of the chars, or -1 if it is not in the table
+     */
+    private int findIndex(String[] table, int[] tableHashes, CharSequence searchVal, int hash) {
+        for (int i = 0; i < table.length; i++) {
+            int index = probe(hash, i, table.length);
+            String cell = table[index];
+            if (cell == null) {
+                recordProbe(i + 1);
+                return -1;
+            }
+            if (tableHashes[index] == hash && cell != DELETED_FLAG && cell.contentEquals(searchVal)) {
+                recordProbe(i + 1);
+                return index;
+            }
+        }
+        recordProbe(table.length);
+        return -1;
+    }
+
+
+    /** update the probe statistics with the length of one lookup */
+    private void recordProbe(int probeLength) {
+        totalProbes += probeLength;
+        lookups++;
+        if (probeLength > maxProbeLength) {
+            maxProbeLength = probeLength;
+        }
+        HashSetMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.recordProbe(probeLength);
+        }
+    }
+
+
+    /**
+     * Puts a value that is not in a table in the first free (null or deleted) cell of its probe sequence
+     * @param table  the table
+     * @param tableHashes  the hashes of the strings in the table
+     * @param value  the value to put
+     * @param hash  the hash of the value
+     * @return true if the value took the cell of a deleted flag, false if it took an empty cell
+     * @throws IllegalStateException if the table has no free cell (only if the upper load factor is above 1)
+     */
+    private boolean place(String[] table, int[] tableHashes, String value, int hash) {
+        // the probe sequence visits every cell of the table once in table.length steps
+        for (int i = 0; i < table.length; i++) {
+            int index = probe(hash, i, table.length);  // the index in the table that will hold this value
+            if (table[index] == null || table[index] == DELETED_FLAG) {  // a deleted cell is free
+                boolean reused = table[index] == DELETED_FLAG;
+                table[index] = value;
+                tableHashes[index] = hash;
+                return reused;
+            }
+        }
+        throw new IllegalStateException("the table has no free cell");
+    }
+
+
+    /**
+     * Puts a value that is not in the set in the closed table, keeping count of the deleted flags it reuses
+     * @param value  the value to put
+     * @param hash  the hash of the value
+     */
+    private void put(String value, int hash) {
+        if (place(closedTable, hashes, value, hash)) {
+            deletedCells--;
+        }
     }
 
 
@@ -66,23 +308,274 @@ public class ClosedHashSet extends SimpleHashSet {
      */
     @Override
     public boolean add(String newValue) {
-        if (this.contains(newValue)){  // to not allow duplicates
+        int hash = hash(newValue);
+        stepRehash();
+        if (find(newValue, hash)){  // to not allow duplicates
             return false;
         }
-        double load = (double)(this.size+1)/closedTable.length;  // calculate the load
-        if(load > getUpperLoadFactor()) {
-            rehash(closedTable.length * 2);   // rehash to a new table (two times as big)
-        }
-        int i = 0;
-        while (true) {
-            int index = clamp(getIndex(newValue, i));  // the index in the hashtable that will hold this value
-            if (closedTable[index] == null) {
-                closedTable[index] = newValue;
-                size++;  // increase number of elements by one
-                return true;
+        makeRoom(1);
+        put(newValue, hash);
+        modCount++;
+        size++;  // increase number of elements by one
+        return true;
+    }
+
+
+    /**
+     * Add the string of a sequence of chars to the set if it's not already in it. The chars are compared with
+     * the strings of the table in place; the string is only created if it is added.
+     *
+     * @param newValue The chars of the new value
+     * @return False iff the value already exists in the set
+     */
+    @Override
+    public boolean add(CharSequence newValue) {
+        if (newValue instanceof String) {
+            return add((String) newValue);
+        }
+        int hash = hash(newValue);
+        stepRehash();
+        if (find(newValue, hash)) {  // to not allow duplicates
+            return false;
+        }
+        makeRoom(1);
+        put(newValue.toString(), hash);
+        modCount++;
+        size++;
+        return true;
+    }
+
+
+    /**
+     * Adds all the values of an array to the set. The table is sized once for all the values (instead of
+     * being doubled again and again while they are added), and the values are added without load checks.
+     *
+     * @param data  Values to add to the set
+     * @param dedupe  false if the caller knows the values are distinct and not in the set, so they are put
+     *                without looking for duplicates
+     * @param parallel  true to hash the values with several threads (only used for large arrays; the values
+     *                  are put by one thread, since probe sequences cross the whole table)
+     * @return The number of values that were added
+     */
+    public int addAll(String[] data, boolean dedupe, boolean parallel) {
+        finishRehash();
+        int neededCapacity = capacityFor(size + data.length);
+        if (neededCapacity > closedTable.length) {
+            rehash(neededCapacity);
+            finishRehash();
+        } else {
+            makeRoom(data.length);  // the deleted flags may still fill the table
+            finishRehash();
+        }
+        int[] dataHashes = new int[data.length];
+        IntStream indices = IntStream.range(0, data.length);
+        (parallel && data.length >= PARALLEL_THRESHOLD ? indices.parallel() : indices)
+                .forEach(i -> dataHashes[i] = hash(data[i]));
+        int added = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (!dedupe || findIndex(closedTable, hashes, data[i], dataHashes[i]) == -1) {
+                put(data[i], dataHashes[i]);
+                added++;
             }
-            i++;  // if the cell is not empty try another i (in the quadratic probing)
         }
+        size += added;
+        modCount += added > 0 ? 1 : 0;
+        return added;
+    }
+
+
+    /**
+     * Adds all the values of an array to the set, sized once for all the values.
+     *
+     * @param data  Values to add to the set
+     * @return The number of values that were added
+     */
+    @Override
+    public int addAll(String[] data) {
+        return addAll(data, true, false);
+    }
+
+
+    /**
+     * Adds a batch of values, a group at a time: the values of a group are hashed and their home cells are
+     * loaded together (so their cache misses are in flight at once) before they are put one by one. A
+     * rehash in progress is finished first.
+     *
+     * @param data  Values to add to the set
+     * @param added  set to true at the index of each value that was added (false for a value that was in the
+     *               set, or earlier in the batch); must be at least as long as data
+     * @return The number of values that were added
+     */
+    @Override
+    public int addAll(String[] data, boolean[] added) {
+        checkBatch(data, added);
+        finishRehash();
+        int[] groupHashes = new int[Math.min(BATCH_GROUP, data.length)];
+        int[] homeHashes = new int[groupHashes.length];
+        String[] homeCells = new String[groupHashes.length];
+        int count = 0;
+        for (int start = 0; start < data.length; start += BATCH_GROUP) {
+            int groupSize = Math.min(BATCH_GROUP, data.length - start);
+            makeRoom(groupSize);
+            finishRehash();  // the values are only looked up in the new table
+            loadGroup(data, start, groupSize, groupHashes, homeHashes, homeCells);
+            for (int j = 0; j < groupSize; j++) {
+                // the home cells may have changed by earlier values of the group, so each value is looked up
+                int i = start + j;
+                added[i] = findIndex(closedTable, hashes, data[i], groupHashes[j]) == -1;
+                if (added[i]) {
+                    put(data[i], groupHashes[j]);
+                    modCount++;
+                    size++;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Looks up a batch of values, a group at a time: the values of a group are hashed and their home cells are
+     * loaded together (so their cache misses are in flight at once), and then each value is resolved from its
+     * loaded home cell, or by following its probe sequence through cells that are now cached. A rehash in
+     * progress is finished first.
+     *
+     * @param keys  Values to search for
+     * @param found  set to true at the index of each value that is in the set, false for the others; must be
+     *               at least as long as keys
+     * @return The number of values that were found
+     */
+    @Override
+    public int containsAll(String[] keys, boolean[] found) {
+        checkBatch(keys, found);
+        finishRehash();
+        int[] groupHashes = new int[Math.min(BATCH_GROUP, keys.length)];
+        int[] homeHashes = new int[groupHashes.length];
+        String[] homeCells = new String[groupHashes.length];
+        int count = 0;
+        for (int start = 0; start < keys.length; start += BATCH_GROUP) {
+            int groupSize = Math.min(BATCH_GROUP, keys.length - start);
+            loadGroup(keys, start, groupSize, groupHashes, homeHashes, homeCells);
+            for (int j = 0; j < groupSize; j++) {
+                String home = homeCells[j];
+                String key = keys[start + j];
+                boolean hit;
+                if (home == null) {  // an empty home cell: the key is missing
+                    recordProbe(1);
+                    hit = false;
+                } else if (home != DELETED_FLAG && homeHashes[j] == groupHashes[j] && home.equals(key)) {
+                    recordProbe(1);
+                    hit = true;
+                } else {
+                    hit = findIndex(closedTable, hashes, key, groupHashes[j]) != -1;
+                }
+                found[start + j] = hit;
+                count += hit ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Hashes a group of values of a batch, and then loads the home cell (and its hash) of each of them
+     * @param values  the values of the batch
+     * @param start  the index of the first value of the group
+     * @param groupSize  the number of values of the group
+     * @param groupHashes  filled with the hashes of the values
+     * @param homeHashes  filled with the hash stored in the home cell of each value
+     * @param homeCells  filled with the home cell of each value
+     */
+    private void loadGroup(String[] values, int start, int groupSize, int[] groupHashes, int[] homeHashes,
+                           String[] homeCells) {
+        for (int j = 0; j < groupSize; j++) {
+            groupHashes[j] = hash(values[start + j]);
+        }
+        for (int j = 0; j < groupSize; j++) {  // independent loads, so their misses overlap
+            int home = probe(groupHashes[j], 0, closedTable.length);
+            homeHashes[j] = hashes[home];
+            homeCells[j] = closedTable[home];
+        }
+    }
+
+
+    /**
+     * Adds every string of another set to this set (the union of the two sets), sized once for all of them.
+     *
+     * @param other  a set that can be iterated (an OpenHashSet, a ClosedHashSet or a CollectionFacadeSet)
+     * @return The number of strings that were added
+     */
+    public int union(SimpleSet other) {
+        return other == this ? 0 : addAll(SetAlgebra.toArray(other));
+    }
+
+
+    /**
+     * Removes the strings that are not in another set (keeps the intersection of the two sets). The smaller
+     * set is iterated and the larger one probed: when the other set is the smaller one, the strings of the
+     * intersection are collected from it and the table is rebuilt once, at the size of the intersection.
+     *
+     * @param other  the other set
+     * @return The number of strings that were removed
+     */
+    public int retainAll(SimpleSet other) {
+        int before = size;
+        if (other.size() < size && SetAlgebra.isIterable(other)) {
+            String[] kept = SetAlgebra.select(other, this, true);
+            clear();
+            addAll(kept, !SetAlgebra.hasDistinctStrings(other), true);  // a list may hold a string twice
+        } else {
+            for (String s : SetAlgebra.select(this, other, false)) {
+                delete(s);
+            }
+        }
+        return before - size;
+    }
+
+
+    /**
+     * Removes the strings that are in another set (keeps the difference of the two sets). The smaller set is
+     * iterated and the larger one probed.
+     *
+     * @param other  the other set
+     * @return The number of strings that were removed
+     */
+    public int removeAll(SimpleSet other) {
+        int before = size;
+        String[] removed = other.size() < size && SetAlgebra.isIterable(other)
+                ? SetAlgebra.toArray(other) : SetAlgebra.select(this, other, true);
+        for (String s : removed) {
+            delete(s);
+        }
+        return before - size;
+    }
+
+
+    /**
+     * Removes all the strings, and goes back to the initial capacity (16, or the nearest the growth policy
+     * allows).
+     */
+    public void clear() {
+        int capacity = getGrowthPolicy().sizeFor(INITIAL_CAPACITY);
+        capacityMinusOne = capacity - 1;
+        closedTable = new String[capacity];
+        hashes = new int[capacity];
+        oldTable = null;
+        oldHashes = null;
+        size = 0;
+        deletedCells = 0;
+        modCount++;
+    }
+
+
+    /**
+     * Builds an immutable copy of the set with a perfect hash (see FrozenStringSet), for a set that is only
+     * queried from now on. This set is not changed.
+     * @return the frozen copy
+     */
+    public FrozenStringSet freeze() {
+        return FrozenStringSet.freeze(this);
     }
 
 
@@ -94,18 +587,50 @@ public class ClosedHashSet extends SimpleHashSet {
      */
     @Override
     public boolean contains(String searchVal) {
-        /* (I tried to make it faster by using hashcode and index but still takes a lot more time
-         than this! I guess I am missing something)) */
+        int hash = hash(searchVal);
+        stepRehash();
+        return find(searchVal, hash);
+    }
 
 
-        for(int i=0; i<closedTable.length; i++){
-            if(closedTable[i] != null){
-                if(closedTable[i].equals(searchVal)){
-                    return true;
-                }
-            }
+    /**
+     * Look for a value in the closed table, and in the old table during an incremental rehash
+     * @param searchVal  the value to look for
+     * @param hash  the hash of the value
+     * @return True iff searchVal is found in the set
+     */
+    private boolean find(String searchVal, int hash) {
+        return findIndex(closedTable, hashes, searchVal, hash) != -1
+                || (oldTable != null && findIndex(oldTable, oldHashes, searchVal, hash) != -1);
+    }
+
+
+    /**
+     * Look for the string of a sequence of chars in the set, without creating the string.
+     *
+     * @param searchVal The chars of the value to search for
+     * @return True iff the value is found in the set
+     */
+    @Override
+    public boolean contains(CharSequence searchVal) {
+        if (searchVal instanceof String) {
+            return contains((String) searchVal);
         }
-        return false;
+        int hash = hash(searchVal);
+        stepRehash();
+        return find(searchVal, hash);
+    }
+
+
+    /**
+     * Look for a sequence of chars in the closed table, and in the old table during an incremental rehash
+     * @param searchVal  the chars to look for
+     * @param hash  the hash of the chars
+     * @return True iff the string of the chars is found in the set
+     */
+    private boolean find(CharSequence searchVal, int hash) {
+        return findIndex(closedTable, hashes, searchVal, hash) != -1
+                || (oldTable != null && findIndex(oldTable, oldHashes, searchVal, hash) != -1);
     }
 
 
@@ -117,20 +642,55 @@ public class ClosedHashSet extends SimpleHashSet {
      */
     @Override
     public boolean delete(String toDelete) {
-        for (int i=0; i<closedTable.length; i++) {
-            if (closedTable[i] != null) {
-                if (closedTable[i].equals(toDelete)) {  // if value to delete was found
-                    closedTable[i] = DELETED_FLAG;  // flag a cell as deleted
-                    size -= 1;  // decrease number of elements by one
-                    double load = (double) size / closedTable.length;  // calculate the load
-                    if (load < getLowerLoadFactor() && closedTable.length > 1) {
-                        rehash(closedTable.length / 2);  // rehash to a new table (two times as small)
-                    }
-                    return true;  // operation was successful
-                }
-            }
+        int hash = hash(toDelete);
+        stepRehash();
+        int index = findIndex(closedTable, hashes, toDelete, hash);
+        int oldIndex = index != -1 || oldTable == null ? -1 : findIndex(oldTable, oldHashes, toDelete, hash);
+        return deleteAt(index, oldIndex);
+    }
+
+
+    /**
+     * Remove the string of a sequence of chars from the set, without creating the string.
+     *
+     * @param toDelete The chars of the value to delete
+     * @return True iff the value is found and deleted
+     */
+    @Override
+    public boolean delete(CharSequence toDelete) {
+        if (toDelete instanceof String) {
+            return delete((String) toDelete);
+        }
+        int hash = hash(toDelete);
+        stepRehash();
+        int index = findIndex(closedTable, hashes, toDelete, hash);
+        int oldIndex = index != -1 || oldTable == null ? -1 : findIndex(oldTable, oldHashes, toDelete, hash);
+        return deleteAt(index, oldIndex);
+    }
+
+
+    /**
+     * Flags the cell of a deleted value as deleted, and shrinks the table if it became too empty
+     * @param index  the index of the value in the closed table, or -1 if it is not there
+     * @param oldIndex  the index of the value in the old table of an incremental rehash, or -1
+     * @return True iff the value was found (and deleted)
+     */
+    private boolean deleteAt(int index, int oldIndex) {
+        if (index != -1) {
+            closedTable[index] = DELETED_FLAG;  // flag a cell as deleted
+            deletedCells++;
+        } else if (oldIndex != -1) {
+            oldTable[oldIndex] = DELETED_FLAG;  // not moved yet, flag its cell in the old table as deleted
+        } else {
+            return false;
+        }
+        modCount++;
+        size -= 1;  // decrease number of elements by one
+        int newCapacity = capacityAfterDelete(size, closedTable.length, 1);
+        if (newCapacity != closedTable.length) {
+            rehash(newCapacity);  // rehash to a new, smaller table
         }
-        return false;
+        return true;  // operation was successful
     }
 
     /**
@@ -152,28 +712,284 @@ public class ClosedHashSet extends SimpleHashSet {
     }
 
 
+    /**
+     * @return The average number of cells visited per lookup since the statistics were last reset
+     */
+    public double getAverageProbeLength() {
+        return lookups == 0 ? 0 : (double) totalProbes / lookups;
+    }
+
+
+    /**
+     * @return The longest probe sequence seen by a lookup since the statistics were last reset
+     */
+    public int getMaxProbeLength() {
+        return maxProbeLength;
+    }
+
+
+    /**
+     * Resets the probe statistics (average and maximum probe length).
+     */
+    public void resetProbeStatistics() {
+        totalProbes = 0;
+        lookups = 0;
+        maxProbeLength = 0;
+    }
+
+
+    /**
+     * @return a fail-fast iterator over the strings of the set (a rehash in progress is finished first)
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+
+    /**
+     * @return a fail-fast spliterator over the strings of the set, split by ranges of the table
+     */
+    @Override
+    public Spliterator<String> spliterator() {
+        return new SlotSpliterator(this);
+    }
+
+
+    /**
+     * Passes every string of the set to an action, walking the table directly
+     * @param action  the action
+     */
+    @Override
+    public void forEach(Consumer<? super String> action) {
+        spliterator().forEachRemaining(action);
+    }
+
+
+    /**
+     * @return a sequential stream of the strings of the set
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+
+    /**
+     * @return a parallel stream of the strings of the set, whose threads read their own ranges of the table
+     */
+    public Stream<String> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+
+    /**
+     * Finishes a rehash in progress
+     * @return the number of cells of the table
+     */
+    @Override
+    public int slotCount() {
+        finishRehash();
+        return closedTable.length;
+    }
+
+
+    /**
+     * Passes the string of a cell to an action, unless the cell is empty or deleted
+     * @param slot  the index of the cell
+     * @param action  the action
+     */
+    @Override
+    public void forEachInSlot(int slot, Consumer<? super String> action) {
+        String cell = closedTable[slot];
+        if (cell != null && cell != DELETED_FLAG) {
+            action.accept(cell);
+        }
+    }
+
+
+    /**
+     * @return the number of successful adds and deletes so far
+     */
+    @Override
+    public int modCount() {
+        return modCount;
+    }
+
+
+    /**
+     * Turns incremental rehashing on or off. When it is on, a rehash keeps the old table next to the new one
+     * and each add, contains and delete moves a few cells of the old table, instead of copying the whole
+     * table in the operation that crossed the load factor. Turning it off finishes a rehash in progress.
+     * @param incrementalRehash  true to rehash incrementally
+     */
+    public void setIncrementalRehash(boolean incrementalRehash) {
+        this.incrementalRehash = incrementalRehash;
+        if (!incrementalRehash) {
+            finishRehash();
+        }
+    }
+
+
+    /**
+     * @return true if an incremental rehash is in progress
+     */
+    public boolean isRehashing() {
+        return oldTable != null;
+    }
+
+
+    /**
+     * @return the number of cells of the table that hold deleted flags
+     */
+    int deletedCells() {
+        return deletedCells;
+    }
+
+
+    /**
+     * @return the cells of the table, after finishing a rehash in progress (for SetSnapshot, not a copy)
+     */
+    String[] table() {
+        finishRehash();
+        return closedTable;
+    }
+
+
+    /**
+     * @return the hashes of the strings in the table, after finishing a rehash in progress (not a copy)
+     */
+    int[] tableHashes() {
+        finishRehash();
+        return hashes;
+    }
+
+
+    /**
+     * Makes sure the strings and deleted flags of the table, with a number of new strings, stay within the
+     * upper load factor: the deleted flags are cleared in place while the live strings leave enough room,
+     * and otherwise the table is rehashed to a new, bigger table.
+     * @param newStrings  the number of strings about to be added
+     */
+    private void makeRoom(int newStrings) {
+        double limit = getUpperLoadFactor() * (double) closedTable.length;
+        if (size + deletedCells + newStrings <= limit) {
+            return;
+        }
+        if (deletedCells > 0 && size + newStrings <= IN_PLACE_CLEANUP_LIMIT * limit) {
+            clearDeletedCells();
+        } else {
+            rehash(Math.max(getGrowthPolicy().grow(closedTable.length), capacityFor(size + newStrings)));
+        }
+    }
+
+
+    /**
+     * Removes the deleted flags from the table without allocating a new one. Every cell that holds a string
+     * is marked as pending and the flags become empty cells; then each pending string is taken out of its
+     * cell and put back in the first cell of its probe sequence that is empty or still pending. A pending
+     * string found there is swapped out and put back the same way. A string is only ever placed after
+     * cells whose strings are final, so each probe sequence stays unbroken.
+     */
+    private void clearDeletedCells() {
+        HashSetMetrics metrics = getMetrics();
+        long timeBefore = metrics == null ? 0 : System.nanoTime();
+        finishRehash();
+        BitSet pending = new BitSet(closedTable.length);
+        for (int j = 0; j < closedTable.length; j++) {
+            if (closedTable[j] == DELETED_FLAG) {
+                closedTable[j] = null;
+            } else if (closedTable[j] != null) {
+                pending.set(j);
+            }
+        }
+        for (int j = pending.nextSetBit(0); j >= 0; j = pending.nextSetBit(j + 1)) {
+            String value = closedTable[j];
+            int hash = hashes[j];
+            closedTable[j] = null;
+            pending.clear(j);
+            while (value != null) {  // until the last displaced string found an empty cell
+                for (int i = 0; ; i++) {
+                    int index = probe(hash, i, closedTable.length);
+                    if (closedTable[index] == null || pending.get(index)) {
+                        String displaced = closedTable[index];
+                        int displacedHash = hashes[index];
+                        closedTable[index] = value;
+                        hashes[index] = hash;
+                        pending.clear(index);
+                        value = displaced;
+                        hash = displacedHash;
+                        break;
+                    }
+                }
+            }
+        }
+        deletedCells = 0;
+        if (metrics != null) {
+            metrics.recordRehash(System.nanoTime() - timeBefore);
+        }
+    }
+
+
     /**
      * This method rehashes the table (copy elements to new table) bigger or smaller one depends on the load
-     * factor and current number of elements.
+     * factor and current number of elements. In incremental mode the strings are moved later, by stepRehash.
      * @param newTableSize  the size of the new rehashed table
      */
     private void rehash(int newTableSize){
+        HashSetMetrics metrics = getMetrics();
+        long timeBefore = metrics == null ? 0 : System.nanoTime();
+        finishRehash();  // a rehash that is still in progress is finished first
         capacityMinusOne = newTableSize - 1;
-        String [] closedTableOld = closedTable;  // holds the old hashtable
+        oldTable = closedTable;  // holds the old hashtable
+        oldHashes = hashes;
+        migrateIndex = 0;
         closedTable = new String[newTableSize];  // make a new hashtable with the new size
-        for (String s: closedTableOld) {  // for each string in the old table
-            if (s == null) {
-                continue;  // if found a null value in the old table skip it
-            }
-            int i = 0;
-            while (true) {
-                int index = clamp(getIndex(s, i));  // calculate the index (quadratic probing)
-                if (closedTable[index] == null) {
-                    closedTable[index] = s;  // add value to the new table
-                    break;  // quit quadratic probing for this value
-                }
-                i++;  // if the cell is not empty try another i (in the quadratic probing)
+        hashes = new int[newTableSize];
+        deletedCells = 0;
+        if (!incrementalRehash) {
+            finishRehash();
+        }
+        if (metrics != null) {
+            metrics.recordRehash(System.nanoTime() - timeBefore);
+        }
+    }
+
+
+    /** move the next few cells of the old table, if an incremental rehash is in progress */
+    private void stepRehash() {
+        if (oldTable != null) {
+            migrate(MIGRATION_STEP);
+        }
+    }
+
+
+    /** move all the remaining cells of the old table, if a rehash is in progress */
+    private void finishRehash() {
+        if (oldTable != null) {
+            migrate(oldTable.length);
+        }
+    }
+
+
+    /**
+     * Moves cells of the old table to the new table. A moved cell is flagged as deleted (not set to null),
+     * so the probe sequences of the strings that were not moved yet stay intact.
+     * @param cells  number of cells to move
+     */
+    private void migrate(int cells) {
+        int end = Math.min(migrateIndex + cells, oldTable.length);
+        for (int j = migrateIndex; j < end; j++) {
+            String s = oldTable[j];
+            if (s == null || s == DELETED_FLAG) {
+                continue;  // if found a null or deleted value in the old table skip it
             }
+            put(s, oldHashes[j]);  // the stored hash is reused
+            oldTable[j] = DELETED_FLAG;
+        }
+        migrateIndex = end;
+        if (migrateIndex == oldTable.length) {  // every cell was moved
+            oldTable = null;
+            oldHashes = null;
         }
     }
 
@@ -1,20 +1,50 @@
 
+import java.util.function.Predicate;
+
 /**
  * Wraps an underlying Collection and serves to both simplify its API and give it a common type with the
  * implemented SimpleHashSets.
+ * A java.util.Set tells from its own add whether a value was new, so adding costs one lookup. Any other
+ * collection (e.g. a list, whose lookups walk every element) gets a side index, an OpenHashSet of the same
+ * strings, once it holds INDEX_THRESHOLD strings: lookups and the duplicate checks of adds go to the index,
+ * and the collection is still kept up to date. Once indexed, the collection should only be changed through
+ * the facade.
  */
 public class CollectionFacadeSet implements SimpleSet {
 
+    /** the smallest non-set collection that gets a side index (a smaller one is scanned as fast) */
+    static final int INDEX_THRESHOLD = 32;
+
     /** The Collection to wrap. */
     protected java.util.Collection<java.lang.String> collection;
 
+    /** the strings of a non-set collection, for its lookups (null while it is small or not indexed) */
+    private OpenHashSet index;
+
+    /** false if the collection is never indexed (it is a set, indexing is turned off, or it holds
+     * duplicates or nulls) */
+    private boolean indexable;
+
 
     /**
-     * Creates a new facade wrapping the specified collection.
+     * Creates a new facade wrapping the specified collection. A collection that is not a set is indexed once
+     * it grows large.
      * @param collection  The Collection to wrap
      */
     public CollectionFacadeSet(java.util.Collection<java.lang.String> collection){
+        this(collection, true);
+    }
+
+
+    /**
+     * Creates a new facade wrapping the specified collection.
+     * @param collection  The Collection to wrap
+     * @param indexed  false to always use the lookups of the collection itself (e.g. to measure them), true to
+     *                 index a collection that is not a set once it grows large
+     */
+    public CollectionFacadeSet(java.util.Collection<java.lang.String> collection, boolean indexed) {
         this.collection = collection;
+        this.indexable = indexed && !(collection instanceof java.util.Set);
     }
 
 
@@ -26,7 +56,14 @@ public class CollectionFacadeSet implements SimpleSet {
      */
     @Override
     public boolean add(java.lang.String newValue) {
-        if(collection.contains(newValue)) {
+        if (collection instanceof java.util.Set) {
+            return collection.add(newValue);  // false iff the set already holds the value
+        }
+        if (isIndexed()) {
+            if (!index.add(newValue)) {
+                return false;
+            }
+        } else if (collection.contains(newValue)) {
             return false;
         }
         collection.add(newValue);
@@ -42,7 +79,7 @@ public class CollectionFacadeSet implements SimpleSet {
      */
     @Override
     public boolean contains(java.lang.String searchVal) {
-        return collection.contains(searchVal);
+        return isIndexed() ? index.contains(searchVal) : collection.contains(searchVal);
     }
 
 
@@ -54,6 +91,13 @@ public class CollectionFacadeSet implements SimpleSet {
      */
     @Override
     public boolean delete(java.lang.String toDelete) {
+        if (index != null) {
+            if (!index.delete(toDelete)) {
+                return false;  // a miss never walks the collection
+            }
+            collection.remove(toDelete);
+            return true;
+        }
         return collection.remove(toDelete);
     }
 
@@ -67,5 +111,93 @@ public class CollectionFacadeSet implements SimpleSet {
     }
 
 
+    /**
+     * @return true if the lookups go to the side index, which is built here when the collection grew large
+     */
+    private boolean isIndexed() {
+        if (index == null && indexable && collection.size() >= INDEX_THRESHOLD) {
+            OpenHashSet newIndex = new OpenHashSet(collection.size());
+            for (String s : collection) {
+                if (s == null || !newIndex.add(s)) {  // the index can't stand for duplicates or nulls
+                    indexable = false;
+                    return false;
+                }
+            }
+            index = newIndex;
+        }
+        return index != null;
+    }
+
+
+    /**
+     * Removes the strings of the collection (and of the side index) that match a filter
+     * @param filter  the strings to remove
+     */
+    private void removeIf(Predicate<String> filter) {
+        if (index == null) {
+            collection.removeIf(filter);
+        } else {
+            collection.removeIf(s -> filter.test(s) && index.delete(s));
+        }
+    }
+
+
+    /**
+     * Adds every string of another set to this set (the union of the two sets). A set collection takes the
+     * strings of another facade with its own addAll; any other collection gets them one by one, so no
+     * duplicates are added.
+     *
+     * @param other  a set that can be iterated (an OpenHashSet, a ClosedHashSet or a CollectionFacadeSet)
+     * @return The number of strings that were added
+     */
+    public int union(SimpleSet other) {
+        int before = collection.size();
+        if (other instanceof CollectionFacadeSet && collection instanceof java.util.Set) {
+            collection.addAll(((CollectionFacadeSet) other).collection);
+        } else if (other != this) {
+            for (String s : SetAlgebra.toArray(other)) {
+                add(s);
+            }
+        }
+        return collection.size() - before;
+    }
+
+
+    /**
+     * Removes the strings that are not in another set (keeps the intersection of the two sets). Each string
+     * is looked up with the contains of the other set, so an indexed facade is probed through its index.
+     *
+     * @param other  the other set
+     * @return The number of strings that were removed
+     */
+    public int retainAll(SimpleSet other) {
+        int before = collection.size();
+        removeIf(s -> !other.contains(s));
+        return before - collection.size();
+    }
+
+
+    /**
+     * Removes the strings that are in another set (keeps the difference of the two sets), with the
+     * removeAll of a set collection when the other set is a facade of a set too.
+     *
+     * @param other  the other set
+     * @return The number of strings that were removed
+     */
+    public int removeAll(SimpleSet other) {
+        int before = collection.size();
+        if (other == this) {
+            collection.clear();
+            index = null;
+        } else if (other instanceof CollectionFacadeSet && collection instanceof java.util.Set
+                && ((CollectionFacadeSet) other).collection instanceof java.util.Set) {
+            collection.removeAll(((CollectionFacadeSet) other).collection);
+        } else {
+            removeIf(other::contains);
+        }
+        return before - collection.size();
+    }
+
+
 
 }
@@ -0,0 +1,311 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a thread-safe hash-set based on chaining. Extends SimpleHashSet.
+ * contains never takes a lock: it reads the bucket with a volatile read and walks a chain whose nodes are
+ * never changed after they are published. add links a new node at the head of the chain (a CAS on an empty
+ * bucket, or under the lock of the current head node), and delete replaces the nodes in front of the deleted
+ * one with copies. When the upper load factor is crossed the table is doubled cooperatively: every thread
+ * that runs into the resize claims a range of buckets and moves them, leaving a ForwardingNode behind.
+ * Note: the table never shrinks, so the lower load factor is not used.
+ */
+public class ConcurrentHashSet extends SimpleHashSet {
+
+    /** number of buckets a resizing thread claims at a time */
+    private static final int TRANSFER_STRIDE = 16;
+
+    /** the current table */
+    private volatile AtomicReferenceArray<StringNode> table;
+
+    /** the placeholder of a resize whose forwarding node is not built yet (it has no bucket to transfer) */
+    private static final ForwardingNode STARTING_RESIZE = new ForwardingNode(new AtomicReferenceArray<>(0),
+            new AtomicReferenceArray<>(0));
+
+    /** the forwarding node of the resize in progress (null when no resize is in progress) */
+    private final AtomicReference<ForwardingNode> resize = new AtomicReference<>();
+
+    /** the current number of elements */
+    private final LongAdder size = new LongAdder();
+
+
+    /**
+     * A default constructor. Constructs a new, empty table with default initial capacity (16),
+     * upper load factor (0.75) and lower load factor (0.25).
+     */
+    public ConcurrentHashSet() {
+        this(0.75f, 0.25f);
+    }
+
+
+    /**
+     * Constructs a new, empty table with the specified load factors, and the default initial capacity (16).
+     * @param upperLoadFactor  The upper load factor of the hash table
+     * @param lowerLoadFactor  The lower load factor of the hash table (not used, the table never shrinks)
+     */
+    public ConcurrentHashSet(float upperLoadFactor, float lowerLoadFactor) {
+        this(upperLoadFactor, lowerLoadFactor, SpreadingHasher.INSTANCE);
+    }
+
+
+    /**
+     * Constructs a new, empty table with the specified load factors and hash-mixing stage, and the default
+     * initial capacity (16).
+     * @param upperLoadFactor  The upper load factor of the hash table
+     * @param lowerLoadFactor  The lower load factor of the hash table (not used, the table never shrinks)
+     * @param hasher  The hash-mixing stage (e.g. a SipHasher for untrusted input)
+     */
+    public ConcurrentHashSet(float upperLoadFactor, float lowerLoadFactor, StringHasher hasher) {
+        super(upperLoadFactor, lowerLoadFactor, hasher);
+        table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    }
+
+
+    /**
+     * Data constructor - builds the hash set by adding the elements one by one. Duplicate values should be
+     * ignored. The new table has the default values of initial capacity (16), upper load factor (0.75),
+     * and lower load factor (0.25).
+     * @param data  Values to add to the set.
+     */
+    public ConcurrentHashSet(java.lang.String[] data) {
+        this();
+        for (String s : data) {
+            this.add(s);
+        }
+    }
+
+
+    /**
+     * Add a specified element to the set if it's not already in it.
+     *
+     * @param newValue New value to add to the set
+     * @return False iff newValue already exists in the set
+     */
+    @Override
+    public boolean add(String newValue) {
+        int hash = hash(newValue);
+        AtomicReferenceArray<StringNode> tab = table;
+        while (true) {
+            int bucket = hash & (tab.length() - 1);
+            StringNode head = tab.get(bucket);
+            if (head == null) {
+                if (tab.compareAndSet(bucket, null, new StringNode(hash, newValue, null))) {
+                    break;
+                }
+                continue;  // another thread changed the bucket, try again
+            }
+            if (head instanceof ForwardingNode) {  // the bucket was moved, help the resize and go to the new table
+                ForwardingNode forwardingNode = (ForwardingNode) head;
+                helpTransfer(forwardingNode);
+                tab = forwardingNode.newTable;
+                continue;
+            }
+            synchronized (head) {
+                if (tab.get(bucket) != head) {
+                    continue;  // another thread changed the bucket, try again
+                }
+                for (StringNode node = head; node != null; node = node.next) {
+                    if (node.hash == hash && node.value.equals(newValue)) {
+                        return false;
+                    }
+                }
+                tab.set(bucket, new StringNode(hash, newValue, head));  // link at the head of the chain
+            }
+            break;
+        }
+        size.increment();
+        ForwardingNode forwardingNode = resize.get();
+        if (forwardingNode != null) {
+            helpTransfer(forwardingNode);
+        } else if (size.sum() > getUpperLoadFactor() * tab.length()) {
+            startResize(tab);
+        }
+        return true;
+    }
+
+
+    /**
+     * Look for a specified value in the set. Never blocks.
+     *
+     * @param searchVal Value to search for
+     * @return True iff searchVal is found in the set
+     */
+    @Override
+    public boolean contains(String searchVal) {
+        int hash = hash(searchVal);
+        AtomicReferenceArray<StringNode> tab = table;
+        StringNode node = tab.get(hash & (tab.length() - 1));
+        while (node instanceof ForwardingNode) {  // the bucket was moved, look in the new table
+            tab = ((ForwardingNode) node).newTable;
+            node = tab.get(hash & (tab.length() - 1));
+        }
+        for (; node != null; node = node.next) {
+            if (node.hash == hash && node.value.equals(searchVal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Remove the input element from the set.
+     *
+     * @param toDelete Value to delete
+     * @return True iff toDelete is found and deleted
+     */
+    @Override
+    public boolean delete(String toDelete) {
+        int hash = hash(toDelete);
+        AtomicReferenceArray<StringNode> tab = table;
+        while (true) {
+            int bucket = hash & (tab.length() - 1);
+            StringNode head = tab.get(bucket);
+            if (head == null) {
+                return false;
+            }
+            if (head instanceof ForwardingNode) {  // the bucket was moved, help the resize and go to the new table
+                ForwardingNode forwardingNode = (ForwardingNode) head;
+                helpTransfer(forwardingNode);
+                tab = forwardingNode.newTable;
+                continue;
+            }
+            synchronized (head) {
+                if (tab.get(bucket) != head) {
+                    continue;  // another thread changed the bucket, try again
+                }
+                StringNode target = head;
+                while (target != null && !(target.hash == hash && target.value.equals(toDelete))) {
+                    target = target.next;
+                }
+                if (target == null) {
+                    return false;
+                }
+                // published nodes are never changed, so the nodes in front of the target are copied
+                StringNode newHead = target.next;
+                for (StringNode node = head; node != target; node = node.next) {
+                    newHead = new StringNode(node.hash, node.value, newHead);
+                }
+                tab.set(bucket, newHead);
+            }
+            size.decrement();
+            return true;
+        }
+    }
+
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+
+    /**
+     * The current capacity of the table.
+     * @return  The current capacity (number of cells) of the table.
+     */
+    @Override
+    public int capacity() {
+        return table.length();
+    }
+
+
+    /**
+     * Starts doubling a table, unless another resize is in progress (or the table was already replaced). The
+     * resize is claimed with a placeholder first, and the forwarding node is only built once the table is
+     * known to be the current one, so no thread ever sees a resize of a table that was already moved.
+     * @param tab  the table that crossed the upper load factor
+     */
+    private void startResize(AtomicReferenceArray<StringNode> tab) {
+        if (table != tab || !resize.compareAndSet(null, STARTING_RESIZE)) {
+            return;  // the table was resized after it was read, or another thread started a resize
+        }
+        if (table != tab) {  // a resize finished between the check and the CAS
+            resize.set(null);
+            return;
+        }
+        ForwardingNode forwardingNode = new ForwardingNode(tab, new AtomicReferenceArray<>(tab.length() * 2));
+        resize.set(forwardingNode);
+        helpTransfer(forwardingNode);
+    }
+
+
+    /**
+     * Claims ranges of buckets of a resize and moves them to the new table, until no bucket is left to
+     * claim. The thread that moves the last bucket installs the new table. Does nothing if the resize is not
+     * the one of the current table (it is finished, or it is the placeholder of a resize being started).
+     * @param forwardingNode  the forwarding node of the resize
+     */
+    private void helpTransfer(ForwardingNode forwardingNode) {
+        if (forwardingNode.oldTable != table) {
+            return;
+        }
+        int oldLength = forwardingNode.oldTable.length();
+        while (true) {
+            int high = forwardingNode.transferIndex.get();
+            if (high <= 0) {
+                return;  // every bucket was claimed
+            }
+            int low = Math.max(0, high - TRANSFER_STRIDE);
+            if (!forwardingNode.transferIndex.compareAndSet(high, low)) {
+                continue;  // another thread claimed these buckets
+            }
+            for (int bucket = high - 1; bucket >= low; bucket--) {
+                transferBucket(forwardingNode, bucket);
+            }
+            if (forwardingNode.transferred.addAndGet(high - low) == oldLength) {
+                table = forwardingNode.newTable;
+                resize.set(null);
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Moves a bucket of the old table to the two buckets of the new table its strings belong to, and puts
+     * the forwarding node in its place. The nodes are copied, since readers may still walk the old chain.
+     * @param forwardingNode  the forwarding node of the resize
+     * @param bucket  the index of the bucket in the old table
+     */
+    private void transferBucket(ForwardingNode forwardingNode, int bucket) {
+        AtomicReferenceArray<StringNode> oldTable = forwardingNode.oldTable;
+        int oldLength = oldTable.length();
+        while (true) {
+            StringNode head = oldTable.get(bucket);
+            if (head == null) {
+                if (oldTable.compareAndSet(bucket, null, forwardingNode)) {
+                    return;
+                }
+                continue;  // another thread added to the bucket, try again
+            }
+            if (head instanceof ForwardingNode) {
+                return;  // the bucket was already moved (its strings are in the next table, not in this chain)
+            }
+            synchronized (head) {
+                if (oldTable.get(bucket) != head) {
+                    continue;  // another thread changed the bucket, try again
+                }
+                StringNode low = null;
+                StringNode high = null;
+                for (StringNode node = head; node != null; node = node.next) {
+                    if ((node.hash & oldLength) == 0) {
+                        low = new StringNode(node.hash, node.value, low);
+                    } else {
+                        high = new StringNode(node.hash, node.value, high);
+                    }
+                }
+                forwardingNode.newTable.set(bucket, low);
+                forwardingNode.newTable.set(bucket + oldLength, high);
+                oldTable.set(bucket, forwardingNode);
+                return;
+            }
+        }
+    }
+
+
+}
@@ -0,0 +1,97 @@
+/**
+ * A growth policy for tables of any size: the table grows (and shrinks) by a constant factor, such as 1.5,
+ * and holds exactly as many cells as an expected size needs, instead of up to twice as many. A hash is reduced
+ * to an index with Lemire's fast range reduction, (hash * capacity) >>> 32 over the unsigned 32 bit hash,
+ * which costs a multiplication instead of a division and uses the high bits of the hash.
+ */
+public class FastRangeGrowth implements GrowthPolicy {
+
+    /** the factor the table grows by */
+    private final double factor;
+
+
+    /**
+     * Constructs a policy that grows the table by a factor of 1.5.
+     */
+    public FastRangeGrowth() {
+        this(1.5);
+    }
+
+
+    /**
+     * Constructs a policy that grows the table by a given factor.
+     * @param factor  the factor the table grows (and shrinks) by (must be bigger than 1)
+     */
+    public FastRangeGrowth(double factor) {
+        if (!(factor > 1)) {
+            throw new IllegalArgumentException("the growth factor must be bigger than 1");
+        }
+        this.factor = factor;
+    }
+
+
+    /**
+     * @param minimumCapacity  the least number of cells the table needs (at least 1)
+     * @return minimumCapacity (every size is allowed)
+     */
+    @Override
+    public int sizeFor(int minimumCapacity) {
+        return Math.max(1, minimumCapacity);
+    }
+
+
+    /**
+     * @param capacity  the current capacity
+     * @return the capacity times the growth factor (and at least one more cell)
+     */
+    @Override
+    public int grow(int capacity) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(capacity + 1L, (long) Math.ceil(capacity * factor)));
+    }
+
+
+    /**
+     * @param capacity  the current capacity
+     * @return the capacity divided by the growth factor (and at least one cell)
+     */
+    @Override
+    public int shrink(int capacity) {
+        return Math.max(1, (int) (capacity / factor));
+    }
+
+
+    /**
+     * @param hash  a mixed hash
+     * @param capacity  the capacity of the table
+     * @return the high bits of hash * capacity
+     */
+    @Override
+    public int index(int hash, int capacity) {
+        return (int) (((hash & 0xFFFFFFFFL) * capacity) >>> 32);
+    }
+
+
+    /**
+     * @return false
+     */
+    @Override
+    public boolean isPowerOfTwo() {
+        return false;
+    }
+
+
+    /**
+     * @return the factor the table grows by
+     */
+    public double getFactor() {
+        return factor;
+    }
+
+
+    @Override
+    public String toString() {
+        return "FastRangeGrowth(" + factor + ")";
+    }
+
+
+}
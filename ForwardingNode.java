@@ -0,0 +1,37 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * a bucket of ConcurrentHashSet that was moved to the next table during a resize. One forwarding node is shared
+ * by all the moved buckets of a resize, and it also holds the state of that resize, so every thread that
+ * meets it can look up in (and help fill) the right table.
+ */
+public class ForwardingNode extends StringNode {
+
+    /** the table being resized */
+    final AtomicReferenceArray<StringNode> oldTable;
+
+    /** the table the buckets are moved to (twice as big) */
+    final AtomicReferenceArray<StringNode> newTable;
+
+    /** the buckets below this index were not claimed by a resizing thread yet */
+    final AtomicInteger transferIndex;
+
+    /** the number of buckets that were moved */
+    final AtomicInteger transferred = new AtomicInteger();
+
+
+    /**
+     * Constructs the forwarding node of a resize
+     * @param oldTable  the table being resized
+     * @param newTable  the table the buckets are moved to
+     */
+    ForwardingNode(AtomicReferenceArray<StringNode> oldTable, AtomicReferenceArray<StringNode> newTable) {
+        super(0, null, null);
+        this.oldTable = oldTable;
+        this.newTable = newTable;
+        this.transferIndex = new AtomicInteger(oldTable.length());
+    }
+
+
+}
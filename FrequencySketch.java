@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+/**
+ * a count-min sketch that estimates how often each hash was seen, for the TinyLFU admission of BoundedHashSet.
+ * Every hash has four 4 bit counters, one per row, packed 16 to a long; its estimate is the smallest of them.
+ * The counters saturate at 15, and once the sketch has counted ten times as many accesses as the set holds
+ * strings, every counter is halved, so old popularity fades and recent accesses weigh more.
+ */
+class FrequencySketch {
+
+    /** the number of rows (counters per hash) */
+    private static final int ROWS = 4;
+
+    /** the largest value of a counter */
+    private static final int MAX_COUNT = 15;
+
+    /** a long with the three low bits of each 4 bit counter set, to halve all the counters of a long at once */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /** the seed of each row, so the rows pick different counters for the same hash */
+    private static final long[] SEEDS = {0x97CB3127A8D4A8C1L, 0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L,
+            0x9AE16A3B2F90404FL};
+
+    /** the counters, 16 per long */
+    private final long[] table;
+
+    /** the number of accesses after which the counters are halved */
+    private final int sampleSize;
+
+    /** the number of accesses counted since the counters were last halved */
+    private int additions = 0;
+
+
+    /**
+     * Constructs an empty sketch for a set of a given maximal size
+     * @param maximumSize  the number of strings the set can hold
+     */
+    FrequencySketch(int maximumSize) {
+        int longs = Integer.highestOneBit(Math.max(2, maximumSize) - 1) << 1;  // a power of two >= maximumSize
+        table = new long[Math.min(longs, 1 << 26)];
+        sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * Math.max(1, maximumSize));
+    }
+
+
+    /**
+     * Counts an access to a hash
+     * @param hash  the hash
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            long counter = counter(hash, row);
+            int index = (int) (counter >>> 32) & (table.length - 1);
+            int shift = (int) counter & 0x3C;  // the bit offset of a 4 bit counter in the long
+            if (((table[index] >>> shift) & MAX_COUNT) < MAX_COUNT) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+
+    /**
+     * @param hash  a hash
+     * @return the estimated number of recent accesses to the hash (at most 15)
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            long counter = counter(hash, row);
+            int index = (int) (counter >>> 32) & (table.length - 1);
+            int shift = (int) counter & 0x3C;
+            frequency = Math.min(frequency, (int) (table[index] >>> shift) & MAX_COUNT);
+        }
+        return frequency;
+    }
+
+
+    /**
+     * Forgets every access
+     */
+    void clear() {
+        Arrays.fill(table, 0);
+        additions = 0;
+    }
+
+
+    /**
+     * Mixes a hash with the seed of a row. The high half picks the long and the low bits pick the counter in it.
+     * @param hash  the hash
+     * @param row  the row
+     * @return the mixed hash
+     */
+    private static long counter(int hash, int row) {
+        long h = (hash + SEEDS[row]) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+
+    /**
+     * Halves every counter (and the count of additions, which is the sum of the counters that were raised)
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+
+}
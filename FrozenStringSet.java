@@ -0,0 +1,442 @@
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * an immutable set of strings, for sets that are built once and then only queried. Implements SimpleSet.
+ * The strings are placed with a perfect hash (CHD, "compress, hash and displace"): each string hashes to a
+ * small bucket, and every bucket stores a displacement that sends its strings to free cells, so no two
+ * strings share a cell and a lookup takes one hash, one fingerprint compare and one string compare, with no
+ * probing. The table is filled to 99%, and the characters of all the strings are packed in one char array
+ * in cell order (no String objects or nodes are kept). The fingerprint and the offset of a cell sit next to
+ * each other, so a lookup touches three arrays: the displacements, the cells and the chars.
+ * add and delete throw UnsupportedOperationException. SetSnapshot can write a frozen set and restore it
+ * without building the perfect hash again.
+ */
+public final class FrozenStringSet implements SimpleSet, Iterable<String>, SlotTable {
+
+    /** the average number of strings in a bucket (more strings per bucket: fewer displacements, slower build) */
+    private static final int AVERAGE_BUCKET_SIZE = 4;
+
+    /** the part of the cells that hold a string */
+    private static final double LOAD_FACTOR = 0.99;
+
+    /** the largest displacement tried for a bucket before the build starts over with another seed */
+    private static final int MAX_DISPLACEMENT = 1 << 20;
+
+    /** the number of seeds tried before the build gives up */
+    private static final int MAX_SEEDS = 32;
+
+    /** the offset basis of the 64 bit FNV-1a hash */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /** the prime of the 64 bit FNV-1a hash */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** the golden ratio in 64 bits, added to move from one seed or displacement to the next */
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    /** the seed of the hash the table was built with */
+    private final long seed;
+
+    /** the number of strings */
+    private final int size;
+
+    /** the displacement of each bucket */
+    private final int[] displacements;
+
+    /** the number of cells */
+    private final int capacity;
+
+    /** two ints per cell: the fingerprint of its string (never 0, or 0 for an empty cell) and the offset of
+     * its string in chars. The string of cell i ends where the string of cell i + 1 starts; a last pair after
+     * the last cell holds the number of chars */
+    private final int[] cells;
+
+    /** the characters of all the strings, in cell order */
+    private final char[] chars;
+
+
+    /**
+     * Builds a frozen set of the values of an array. Duplicate values are ignored.
+     * @param data  Values of the set.
+     * @throws IllegalArgumentException if the values have more than Integer.MAX_VALUE characters in total
+     */
+    public FrozenStringSet(String[] data) {
+        this(data, false);
+    }
+
+
+    /**
+     * Builds a frozen set of the values of an array
+     * @param data  the values
+     * @param distinct  true if the caller knows the values have no duplicates
+     */
+    private FrozenStringSet(String[] data, boolean distinct) {
+        String[] keys = distinct ? data : distinct(data);
+        size = keys.length;
+        capacity = Math.max(1, (int) Math.ceil(size / LOAD_FACTOR));
+        displacements = new int[Math.max(1, (size + AVERAGE_BUCKET_SIZE - 1) / AVERAGE_BUCKET_SIZE)];
+        long[] hashes = new long[size];
+        long attemptSeed = 0;
+        int[] cellOf = null;
+        for (int attempt = 0; cellOf == null; attempt++) {
+            if (attempt == MAX_SEEDS) {
+                throw new IllegalStateException("no perfect hash found after " + MAX_SEEDS + " seeds");
+            }
+            attemptSeed = attempt * GOLDEN;
+            for (int i = 0; i < size; i++) {
+                hashes[i] = hash(keys[i], attemptSeed);
+            }
+            cellOf = place(hashes, capacity, displacements);
+        }
+        seed = attemptSeed;
+        cells = new int[2 * (capacity + 1)];
+        String[] table = new String[capacity];
+        for (int i = 0; i < size; i++) {
+            table[cellOf[i]] = keys[i];
+            cells[2 * cellOf[i]] = fingerprint(hashes[i]);
+        }
+        long length = 0;
+        for (int cell = 0; cell < capacity; cell++) {
+            length += table[cell] == null ? 0 : table[cell].length();
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("a frozen set holds at most 2^31 characters");
+            }
+            cells[2 * cell + 3] = (int) length;
+        }
+        chars = new char[(int) length];
+        for (int cell = 0; cell < capacity; cell++) {
+            if (table[cell] != null) {
+                table[cell].getChars(0, table[cell].length(), chars, cells[2 * cell + 1]);
+            }
+        }
+    }
+
+
+    /**
+     * Restores a frozen set written by SetSnapshot
+     * @param seed  the seed of the hash the table was built with
+     * @param size  the number of strings
+     * @param displacements  the displacement of each bucket
+     * @param cells  the fingerprint and offset of each cell, and the number of chars
+     * @param chars  the characters of the strings
+     */
+    FrozenStringSet(long seed, int size, int[] displacements, int[] cells, char[] chars) {
+        this.seed = seed;
+        this.size = size;
+        this.capacity = cells.length / 2 - 1;
+        this.displacements = displacements;
+        this.cells = cells;
+        this.chars = chars;
+    }
+
+
+    /**
+     * Freezes a set: builds a frozen set of its strings. The set itself is not changed.
+     * @param set  a set that can be iterated (an OpenHashSet, a ClosedHashSet, a CollectionFacadeSet or
+     *             a FrozenStringSet, which is returned as it is)
+     * @return the frozen set
+     * @throws IllegalArgumentException if the strings of the set can't be iterated
+     */
+    public static FrozenStringSet freeze(SimpleSet set) {
+        if (set instanceof FrozenStringSet) {
+            return (FrozenStringSet) set;
+        }
+        // the strings of a hash-set are distinct, a wrapped collection (e.g. a list) may hold duplicates
+        return new FrozenStringSet(SetAlgebra.toArray(set), !(set instanceof CollectionFacadeSet));
+    }
+
+
+    /**
+     * @param data  some values
+     * @return the distinct values
+     */
+    private static String[] distinct(String[] data) {
+        ClosedHashSet set = new ClosedHashSet(data.length);
+        set.addAll(data);
+        return SetAlgebra.toArray(set);
+    }
+
+
+    /**
+     * Finds a displacement for every bucket, the largest buckets first (while most cells are free), such that
+     * the strings of the bucket go to distinct free cells.
+     * @param hashes  the hashes of the strings
+     * @param capacity  the number of cells
+     * @param displacements  filled with the displacement of each bucket
+     * @return the cell of each string, or null if some bucket found no displacement (the seed is bad)
+     */
+    private static int[] place(long[] hashes, int capacity, int[] displacements) {
+        int buckets = displacements.length;
+        // group the strings by bucket
+        int[] bucketStart = new int[buckets + 1];
+        for (long hash : hashes) {
+            bucketStart[bucket(hash, buckets) + 1]++;
+        }
+        int largest = 0;
+        for (int b = 0; b < buckets; b++) {
+            largest = Math.max(largest, bucketStart[b + 1]);
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        int[] members = new int[hashes.length];
+        int[] next = bucketStart.clone();
+        for (int i = 0; i < hashes.length; i++) {
+            members[next[bucket(hashes[i], buckets)]++] = i;
+        }
+        // order the buckets by size, largest first
+        int[] sizeStart = new int[largest + 2];
+        for (int b = 0; b < buckets; b++) {
+            sizeStart[largest - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+        }
+        for (int s = 0; s <= largest; s++) {
+            sizeStart[s + 1] += sizeStart[s];
+        }
+        int[] order = new int[buckets];
+        for (int b = 0; b < buckets; b++) {
+            order[sizeStart[largest - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+        }
+        BitSet taken = new BitSet(capacity);
+        int[] cellOf = new int[hashes.length];
+        for (int b : order) {
+            int from = bucketStart[b];
+            int to = bucketStart[b + 1];
+            if (from == to) {
+                break;  // the remaining buckets are empty too
+            }
+            int displacement = 0;
+            int placed = from;
+            while (placed < to) {
+                int cell = cell(hashes[members[placed]], displacement, capacity);
+                if (!taken.get(cell)) {
+                    taken.set(cell);
+                    cellOf[members[placed++]] = cell;
+                    continue;
+                }
+                for (int k = from; k < placed; k++) {  // free the cells of this attempt and try the next one
+                    taken.clear(cellOf[members[k]]);
+                }
+                placed = from;
+                if (++displacement == MAX_DISPLACEMENT) {
+                    return null;
+                }
+            }
+            displacements[b] = displacement;
+        }
+        return cellOf;
+    }
+
+
+    /**
+     * Look for a specified value in the set.
+     *
+     * @param searchVal Value to search for
+     * @return True iff searchVal is found in the set
+     */
+    @Override
+    public boolean contains(String searchVal) {
+        long hash = hash(searchVal, seed);
+        int cell = cell(hash, displacements[bucket(hash, displacements.length)], capacity);
+        if (cells[2 * cell] != fingerprint(hash)) {
+            return false;
+        }
+        int offset = cells[2 * cell + 1];
+        if (cells[2 * cell + 3] - offset != searchVal.length()) {
+            return false;
+        }
+        for (int i = 0; i < searchVal.length(); i++) {
+            if (chars[offset + i] != searchVal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * A frozen set can't be changed.
+     * @param newValue New value to add to the set
+     * @return never returns
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean add(String newValue) {
+        throw new UnsupportedOperationException("a frozen set is read-only");
+    }
+
+
+    /**
+     * A frozen set can't be changed.
+     * @param toDelete Value to delete
+     * @return never returns
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean delete(String toDelete) {
+        throw new UnsupportedOperationException("a frozen set is read-only");
+    }
+
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * @return The number of cells of the table
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+
+    /**
+     * @param value  a string
+     * @param seed  the seed of the table
+     * @return the 64 bit hash of the string: FNV-1a over its length and its characters (two at a time),
+     *         mixed with the murmur3 finalizer
+     */
+    static long hash(String value, long seed) {
+        int length = value.length();
+        long h = (FNV_OFFSET ^ seed ^ length) * FNV_PRIME;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            h = (h ^ (value.charAt(i) | (long) value.charAt(i + 1) << 16)) * FNV_PRIME;
+        }
+        if (i < length) {
+            h = (h ^ value.charAt(i)) * FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+
+    /**
+     * @param hash  the hash of a string
+     * @param buckets  the number of buckets
+     * @return the bucket of the string (from the high bits of the hash)
+     */
+    private static int bucket(long hash, int buckets) {
+        return (int) (((hash >>> 32) * buckets) >>> 32);
+    }
+
+
+    /**
+     * @param hash  the hash of a string
+     * @param displacement  the displacement of the string's bucket
+     * @param capacity  the number of cells
+     * @return the cell of the string
+     */
+    private static int cell(long hash, int displacement, int capacity) {
+        long h = hash + displacement * GOLDEN;
+        h ^= h >>> 29;
+        h *= 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 32;
+        return (int) (((h >>> 32) * capacity) >>> 32);
+    }
+
+
+    /**
+     * @param hash  the hash of a string
+     * @return the fingerprint stored in the cell of the string (never 0, the fingerprint of an empty cell)
+     */
+    private static int fingerprint(long hash) {
+        return (int) hash | 1;
+    }
+
+
+    /**
+     * @return an iterator over the strings of the set, in cell order
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+
+    /**
+     * @return a spliterator over the strings of the set that splits by ranges of cells
+     */
+    @Override
+    public Spliterator<String> spliterator() {
+        return new SlotSpliterator(this);
+    }
+
+
+    /**
+     * @return a sequential stream of the strings of the set
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+
+    /**
+     * @return the number of cells of the table
+     */
+    @Override
+    public int slotCount() {
+        return capacity;
+    }
+
+
+    /**
+     * Passes the string of a cell to an action, unless the cell is empty
+     * @param slot  the index of the cell
+     * @param action  the action
+     */
+    @Override
+    public void forEachInSlot(int slot, Consumer<? super String> action) {
+        if (cells[2 * slot] != 0) {
+            int offset = cells[2 * slot + 1];
+            action.accept(new String(chars, offset, cells[2 * slot + 3] - offset));
+        }
+    }
+
+
+    /**
+     * @return 0, a frozen set never changes
+     */
+    @Override
+    public int modCount() {
+        return 0;
+    }
+
+
+    /** @return the seed of the hash the table was built with (for SetSnapshot) */
+    long seed() {
+        return seed;
+    }
+
+
+    /** @return the displacement of each bucket (for SetSnapshot) */
+    int[] displacements() {
+        return displacements;
+    }
+
+
+    /** @return the fingerprint and offset of each cell (for SetSnapshot) */
+    int[] cells() {
+        return cells;
+    }
+
+
+    /** @return the characters of the strings (for SetSnapshot) */
+    char[] chars() {
+        return chars;
+    }
+
+
+}
@@ -0,0 +1,38 @@
+/**
+ * The growth policy of a SimpleHashSet: decides which table sizes the set may use, how it grows and shrinks
+ * between them, and how a hash is reduced to an index of a table of such a size.
+ */
+public interface GrowthPolicy {
+
+    /**
+     * @param minimumCapacity  the least number of cells the table needs (at least 1)
+     * @return the smallest capacity this policy allows that is at least minimumCapacity
+     */
+    int sizeFor(int minimumCapacity);
+
+    /**
+     * @param capacity  the current capacity
+     * @return the capacity to rehash to when the table crosses its upper load factor
+     */
+    int grow(int capacity);
+
+    /**
+     * @param capacity  the current capacity
+     * @return the capacity to rehash to when the table crosses its lower load factor
+     */
+    int shrink(int capacity);
+
+    /**
+     * Reduces a hash to an index of the table.
+     * @param hash  a mixed hash
+     * @param capacity  the capacity of the table (one that this policy allows)
+     * @return an index between 0 and capacity - 1
+     */
+    int index(int hash, int capacity);
+
+    /**
+     * @return true iff every capacity this policy allows is a power of two (so an index is hash & (capacity - 1))
+     */
+    boolean isPowerOfTwo();
+
+}
@@ -0,0 +1,220 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Opt-in counters and a histogram of the hot paths of a hash-set: the number and duration of rehashes, and
+ * the probe length of lookups (the cells ClosedHashSet probes, or the nodes OpenHashSet.contains compares).
+ * A set records nothing until it is given a HashSetMetrics with SimpleHashSet.setMetrics; until then each
+ * hot path only checks a null field. The counters are striped LongAdders, so recording is cheap even
+ * when several threads share the metrics, and the histogram has one bucket per power of two (like the
+ * buckets of an HdrHistogram with no sub-buckets). The metrics can be registered as a JMX MXBean.
+ */
+public class HashSetMetrics implements HashSetMetricsMXBean {
+
+    /** the number of histogram buckets: the length 0, and one bucket per power of two of an int */
+    private static final int BUCKETS = Integer.SIZE + 1;
+
+    /** the name of the metrics in JMX */
+    private final String name;
+
+    /** the set the metrics belong to (null until a set records into them) */
+    private volatile SimpleHashSet set;
+
+    /** the number of rehashes */
+    private final LongAdder rehashes = new LongAdder();
+
+    /** the time spent in rehash calls */
+    private final LongAdder rehashNanos = new LongAdder();
+
+    /** the sum of the probe lengths of the lookups */
+    private final LongAdder probes = new LongAdder();
+
+    /** the number of lookups per probe-length bucket */
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+
+    /**
+     * Creates empty metrics
+     * @param name  the name of the metrics in JMX (e.g. the role of the set)
+     */
+    public HashSetMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+
+    /**
+     * Binds the metrics to the set that records into them (for the size, capacity and tombstone gauges)
+     * @param set  the set
+     */
+    void bind(SimpleHashSet set) {
+        this.set = set;
+    }
+
+
+    /**
+     * Records a rehash
+     * @param nanos  the duration of the rehash call
+     */
+    void recordRehash(long nanos) {
+        rehashes.increment();
+        rehashNanos.add(nanos);
+    }
+
+
+    /**
+     * Records the probe length of a lookup
+     * @param length  the number of cells or nodes the lookup compared
+     */
+    void recordProbe(int length) {
+        probes.add(length);
+        histogram[Integer.SIZE - Integer.numberOfLeadingZeros(length)].increment();
+    }
+
+
+    @Override
+    public int getSize() {
+        SimpleHashSet bound = set;
+        return bound == null ? 0 : bound.size();
+    }
+
+
+    @Override
+    public int getCapacity() {
+        SimpleHashSet bound = set;
+        return bound == null ? 0 : bound.capacity();
+    }
+
+
+    @Override
+    public double getTombstoneRatio() {
+        SimpleHashSet bound = set;
+        if (!(bound instanceof ClosedHashSet)) {
+            return 0;
+        }
+        return (double) ((ClosedHashSet) bound).deletedCells() / bound.capacity();
+    }
+
+
+    @Override
+    public long getRehashCount() {
+        return rehashes.sum();
+    }
+
+
+    @Override
+    public long getRehashTimeNanos() {
+        return rehashNanos.sum();
+    }
+
+
+    @Override
+    public long getLookupCount() {
+        long lookups = 0;
+        for (LongAdder bucket : histogram) {
+            lookups += bucket.sum();
+        }
+        return lookups;
+    }
+
+
+    @Override
+    public double getAverageProbeLength() {
+        long lookups = getLookupCount();
+        return lookups == 0 ? 0 : (double) probes.sum() / lookups;
+    }
+
+
+    @Override
+    public long getProbeLengthP99() {
+        long[] counts = getProbeLengthHistogram();
+        long lookups = 0;
+        for (long count : counts) {
+            lookups += count;
+        }
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen * 100 >= lookups * 99 && seen > 0) {
+                return bucket == 0 ? 0 : (1L << bucket) - 1;  // the largest length of the bucket
+            }
+        }
+        return 0;
+    }
+
+
+    @Override
+    public long[] getProbeLengthHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts[bucket] = histogram[bucket].sum();
+        }
+        return counts;
+    }
+
+
+    @Override
+    public void reset() {
+        rehashes.reset();
+        rehashNanos.reset();
+        probes.reset();
+        for (LongAdder bucket : histogram) {
+            bucket.reset();
+        }
+    }
+
+
+    /**
+     * Registers the metrics in the platform MBean server, as hashset:type=HashSetMetrics,name=(name)
+     * @return the name the metrics were registered under
+     * @throws IllegalStateException if the metrics can't be registered (e.g. the name is taken)
+     */
+    public ObjectName register() {
+        try {
+            ObjectName objectName = objectName();
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("can't register the metrics " + name, e);
+        }
+    }
+
+
+    /**
+     * Removes the metrics from the platform MBean server
+     * @throws IllegalStateException if the metrics are not registered
+     */
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName());
+        } catch (JMException e) {
+            throw new IllegalStateException("can't unregister the metrics " + name, e);
+        }
+    }
+
+
+    /**
+     * @return a one line summary of the metrics
+     */
+    @Override
+    public String toString() {
+        return String.format("rehashes %d (%.2fms), lookups %d, probe length average %.2f p99 <= %d, "
+                + "tombstones %.1f%%", getRehashCount(), getRehashTimeNanos() / 1e6, getLookupCount(), getAverageProbeLength(),
+                getProbeLengthP99(), getTombstoneRatio() * 100);
+    }
+
+
+    /**
+     * @return the JMX name of the metrics
+     * @throws JMException if the name is not a valid JMX name
+     */
+    private ObjectName objectName() throws JMException {
+        return new ObjectName("hashset:type=HashSetMetrics,name=" + ObjectName.quote(name));
+    }
+
+
+}
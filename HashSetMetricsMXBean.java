@@ -0,0 +1,65 @@
+/**
+ * The JMX view of the HashSetMetrics of a hash-set.
+ */
+public interface HashSetMetricsMXBean {
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    int getSize();
+
+
+    /**
+     * @return The current capacity of the table
+     */
+    int getCapacity();
+
+
+    /**
+     * @return The fraction of the table's cells that hold deleted flags (0 for a set that has none)
+     */
+    double getTombstoneRatio();
+
+
+    /**
+     * @return The number of rehashes (grows, shrinks and in-place cleanups of deleted flags)
+     */
+    long getRehashCount();
+
+
+    /**
+     * @return The total time spent in rehash calls, in nanoseconds
+     */
+    long getRehashTimeNanos();
+
+
+    /**
+     * @return The number of recorded lookups
+     */
+    long getLookupCount();
+
+
+    /**
+     * @return The average probe length of the recorded lookups
+     */
+    double getAverageProbeLength();
+
+
+    /**
+     * @return An upper bound of the 99th percentile of the probe length
+     */
+    long getProbeLengthP99();
+
+
+    /**
+     * @return The number of recorded lookups per probe-length bucket: bucket 0 counts the length 0, and
+     * bucket b counts the lengths from 2^(b-1) to 2^b - 1
+     */
+    long[] getProbeLengthHistogram();
+
+
+    /** sets the counters and the histogram back to zero */
+    void reset();
+
+
+}
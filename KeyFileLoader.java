@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Loads a key file (one key per line, UTF-8) into a set without reading the whole file first, unlike
+ * Ex3Utils.file2array. The file is read through a FileChannel into a fixed buffer, each line is decoded when
+ * it is reached, and the keys are added in batches (with addAll for the hash-sets, so the table is sized
+ * once per batch). Only one buffer and one batch per reader are on the heap at a time.
+ * Lines end with "\n" or "\r\n"; the last line needs no line break, as with Ex3Utils.file2array.
+ *
+ * loadParallel splits the file into ranges that are read by several threads. A range owns the lines that
+ * start in it, so a line is never split between threads. A ConcurrentHashSet is filled by the readers
+ * directly; any other set is filled by the calling thread from a bounded queue of batches.
+ */
+public final class KeyFileLoader {
+
+    /** the number of keys added at once */
+    static final int BATCH_SIZE = 4096;
+
+    /** the size of the read buffer of each reader */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** the number of ranges each reader thread gets, so a slow range doesn't hold the others back */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /** marks the end of a reader's batches in the queue of loadParallel */
+    private static final String[] END = new String[0];
+
+
+    /** no instances, only static methods */
+    private KeyFileLoader() {
+    }
+
+
+    /**
+     * Adds the keys of a file to a set, batch by batch
+     * @param file  the key file
+     * @param set  the set
+     * @return the number of keys that were added (duplicates are not counted)
+     * @throws IOException if the file can't be read
+     */
+    public static int load(Path file, SimpleSet set) throws IOException {
+        int[] added = new int[1];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            readLines(channel, 0, channel.size(), batch -> added[0] += addBatch(set, batch));
+        }
+        return added[0];
+    }
+
+
+    /**
+     * Adds the keys of a file to a set, reading ranges of the file with several threads
+     * @param file  the key file
+     * @param set  the set (a ConcurrentHashSet is filled by all the threads at once)
+     * @param threads  the number of reader threads
+     * @return the number of keys that were added (duplicates are not counted)
+     * @throws IOException if the file can't be read
+     */
+    public static int loadParallel(Path file, SimpleSet set, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            int ranges = (int) Math.max(1, Math.min((long) threads * RANGES_PER_THREAD, length / BUFFER_SIZE));
+            AtomicInteger nextRange = new AtomicInteger();
+            AtomicInteger added = new AtomicInteger();
+            BlockingQueue<String[]> queue = new ArrayBlockingQueue<>(2 * threads);
+            boolean direct = set instanceof ConcurrentHashSet;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> readers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    readers.add(pool.submit(() -> {
+                        try {
+                            // each reader takes the next range until all of them were read
+                            for (int r = nextRange.getAndIncrement(); r < ranges; r = nextRange.getAndIncrement()) {
+                                readLines(channel, length * r / ranges, length * (r + 1) / ranges,
+                                        direct ? batch -> added.addAndGet(addBatch(set, batch))
+                                                : batch -> put(queue, batch));
+                            }
+                        } finally {
+                            if (!direct) {
+                                put(queue, END);
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                if (!direct) {
+                    for (int running = threads; running > 0; ) {
+                        String[] batch = take(queue);
+                        if (batch == END) {
+                            running--;
+                        } else {
+                            added.addAndGet(addBatch(set, batch));
+                        }
+                    }
+                }
+                for (Future<?> reader : readers) {
+                    await(reader);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            return added.get();
+        }
+    }
+
+
+    /**
+     * Reads the lines that start in a range of a file and passes them on in batches. A range that doesn't
+     * start at the beginning of the file skips its first (partial) line, which belongs to the previous range;
+     * the last line that starts in the range is read to its end, even past the range.
+     * @param channel  the channel of the file (read with positional reads, so it can be shared by threads)
+     * @param from  the first byte of the range
+     * @param to  the byte after the range
+     * @param batches  receives the batches of lines
+     * @throws IOException if the file can't be read
+     */
+    static void readLines(FileChannel channel, long from, long to, Consumer<String[]> batches)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // start one byte early: if it is a line break, the range starts with a whole line
+        long position = from == 0 ? 0 : from - 1;
+        long lineStart = position;  // the position in the file of the first byte in the buffer
+        boolean skipLine = from != 0;
+        String[] batch = new String[BATCH_SIZE];
+        int count = 0;
+        boolean eof = false;
+        while (!eof && lineStart < to) {
+            int read = channel.read(buffer, position);
+            if (read == -1) {
+                eof = true;
+            } else {
+                position += read;
+            }
+            byte[] bytes = buffer.array();
+            int start = 0;
+            for (int i = 0; i < buffer.position() && lineStart < to; i++) {
+                if (bytes[i] == '\n' || (eof && i == buffer.position() - 1)) {
+                    int end = bytes[i] == '\n' ? i : i + 1;
+                    if (!skipLine) {
+                        int trimmed = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+                        batch[count++] = new String(bytes, start, trimmed - start, StandardCharsets.UTF_8);
+                        if (count == BATCH_SIZE) {
+                            batches.accept(batch);
+                            batch = new String[BATCH_SIZE];
+                            count = 0;
+                        }
+                    }
+                    skipLine = false;
+                    lineStart += i + 1 - start;
+                    start = i + 1;
+                }
+            }
+            if (eof) {
+                break;
+            }
+            // keep the unfinished line at the start of the buffer, and grow the buffer if the line fills it
+            buffer.limit(buffer.position()).position(start);
+            buffer.compact();
+            if (!buffer.hasRemaining()) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+            }
+        }
+        if (count > 0) {
+            batches.accept(Arrays.copyOf(batch, count));
+        }
+    }
+
+
+    /**
+     * Adds a batch of keys to a set
+     * @param set  the set
+     * @param batch  the keys
+     * @return the number of keys that were added
+     */
+    private static int addBatch(SimpleSet set, String[] batch) {
+        if (set instanceof SimpleHashSet) {
+            return ((SimpleHashSet) set).addAll(batch);
+        }
+        int added = 0;
+        for (String key : batch) {
+            if (set.add(key)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+
+    /**
+     * Puts a batch in the queue, waiting for room
+     * @param queue  the queue
+     * @param batch  the batch
+     */
+    private static void put(BlockingQueue<String[]> queue, String[] batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while loading keys", e);
+        }
+    }
+
+
+    /**
+     * Takes a batch from the queue, waiting for one
+     * @param queue  the queue
+     * @return the batch
+     */
+    private static String[] take(BlockingQueue<String[]> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while loading keys", e);
+        }
+    }
+
+
+    /**
+     * Waits for a reader to finish, and rethrows its failure
+     * @param reader  the reader
+     * @throws IOException if the reader failed to read the file
+     */
+    private static void await(Future<?> reader) throws IOException {
+        try {
+            reader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while loading keys", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("a reader failed", e.getCause());
+        }
+    }
+
+
+}
@@ -0,0 +1,229 @@
+/**
+ * a hash-set of long values based on open addressing with linear probing, in the style of ClosedHashSet but
+ * without objects: the values are stored in a long[] table, so a full cell costs 8 bytes and a lookup only
+ * compares longs. 0 marks an empty cell; the value 0 itself is kept aside in a flag. Deleted values are
+ * removed by shifting the rest of their cluster back (backward-shift deletion), so the table never holds
+ * deleted flags.
+ */
+public class LongOpenHashSet {
+
+    /** default initial capacity */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** the content of an empty cell */
+    private static final long EMPTY = 0;
+
+    /** the values of the table (EMPTY for an empty cell) */
+    private long[] table;
+
+    /** table length minus one, to clamp a hash to an index */
+    private int capacityMinusOne;
+
+    /** true if 0 (which can't be stored in the table) is in the set */
+    private boolean hasZero = false;
+
+    /** the current number of elements, including 0 */
+    private int size = 0;
+
+    /** the upper load factor of the table */
+    private final float upperLoadFactor;
+
+    /** the lower load factor of the table */
+    private final float lowerLoadFactor;
+
+
+    /**
+     * A default constructor. Constructs a new, empty table with default initial capacity (16),
+     * upper load factor (0.75) and lower load factor (0.25).
+     */
+    public LongOpenHashSet() {
+        this(0.75f, 0.25f);
+    }
+
+
+    /**
+     * Constructs a new, empty table with the specified load factors, and the default initial capacity (16).
+     * @param upperLoadFactor  The upper load factor of the hash table (must be smaller than 1)
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     */
+    public LongOpenHashSet(float upperLoadFactor, float lowerLoadFactor) {
+        if (upperLoadFactor >= 1) {
+            throw new IllegalArgumentException("the upper load factor must be smaller than 1");
+        }
+        this.upperLoadFactor = upperLoadFactor;
+        this.lowerLoadFactor = lowerLoadFactor;
+        allocate(INITIAL_CAPACITY);
+    }
+
+
+    /**
+     * Add a specified value to the set if it's not already in it.
+     *
+     * @param newValue New value to add to the set
+     * @return False iff newValue already exists in the set
+     */
+    public boolean add(long newValue) {
+        if (newValue == EMPTY) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        if (findIndex(newValue) != -1) {  // to not allow duplicates
+            return false;
+        }
+        double load = (double) (tableSize() + 1) / table.length;  // calculate the load
+        if (load > upperLoadFactor) {
+            rehash(table.length * 2);  // rehash to a new table (two times as big)
+        }
+        place(newValue);
+        size++;
+        return true;
+    }
+
+
+    /**
+     * Look for a specified value in the set.
+     *
+     * @param searchVal Value to search for
+     * @return True iff searchVal is found in the set
+     */
+    public boolean contains(long searchVal) {
+        return searchVal == EMPTY ? hasZero : findIndex(searchVal) != -1;
+    }
+
+
+    /**
+     * Remove the input value from the set.
+     *
+     * @param toDelete Value to delete
+     * @return True iff toDelete is found and deleted
+     */
+    public boolean delete(long toDelete) {
+        if (toDelete == EMPTY) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+        int index = findIndex(toDelete);
+        if (index == -1) {
+            return false;
+        }
+        int hole = index;
+        for (int next = (hole + 1) & capacityMinusOne; table[next] != EMPTY;
+             next = (next + 1) & capacityMinusOne) {
+            // a value may fill the hole only if the hole is between its home cell and its cell
+            if (((next - home(table[next])) & capacityMinusOne) >= ((next - hole) & capacityMinusOne)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = EMPTY;
+        size--;
+        double load = (double) tableSize() / table.length;  // calculate the load
+        if (load < lowerLoadFactor && table.length > INITIAL_CAPACITY) {
+            rehash(table.length / 2);  // rehash to a new table (two times as small)
+        }
+        return true;
+    }
+
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * The current capacity of the table.
+     * @return  The current capacity (number of cells) of the table.
+     */
+    public int capacity() {
+        return table.length;
+    }
+
+
+    /**
+     * @param value  a value
+     * @return the home cell of the value: its bits mixed by the murmur3 64 bit finalizer, clamped to the table
+     */
+    private int home(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value & capacityMinusOne;
+    }
+
+
+    /**
+     * @return the number of values stored in the table (0 is not)
+     */
+    private int tableSize() {
+        return hasZero ? size - 1 : size;
+    }
+
+
+    /**
+     * Looks for a (non zero) value from its home cell until the value or an empty cell is found
+     * @param searchVal  the value
+     * @return the index of the cell holding the value, or -1 if it is not in the table
+     */
+    private int findIndex(long searchVal) {
+        for (int index = home(searchVal); table[index] != EMPTY; index = (index + 1) & capacityMinusOne) {
+            if (table[index] == searchVal) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Puts a (non zero) value that is not in the table in the first empty cell from its home cell
+     * @param value  the value
+     */
+    private void place(long value) {
+        int index = home(value);
+        while (table[index] != EMPTY) {
+            index = (index + 1) & capacityMinusOne;
+        }
+        table[index] = value;
+    }
+
+
+    /**
+     * Allocates a new, empty table of a given capacity
+     * @param newCapacity  the new capacity (a power of two)
+     */
+    private void allocate(int newCapacity) {
+        capacityMinusOne = newCapacity - 1;
+        table = new long[newCapacity];
+    }
+
+
+    /**
+     * This method rehashes the table (copy values to new table) bigger or smaller one depends on the load
+     * factor and current number of elements.
+     * @param newTableSize  the size of the new rehashed table
+     */
+    private void rehash(int newTableSize) {
+        long[] oldTable = table;
+        allocate(newTableSize);
+        for (long value : oldTable) {
+            if (value != EMPTY) {
+                place(value);
+            }
+        }
+    }
+
+
+}
@@ -0,0 +1,143 @@
+import java.nio.ByteBuffer;
+
+/**
+ * a read-only hash-set over a memory-mapped snapshot written by SetSnapshot. Extends SimpleHashSet.
+ * Lookups follow the table layout of the set that was written (the quadratic probe sequence of a
+ * ClosedHashSet, or the bucket of an OpenHashSet) directly in the file, and compare the UTF-8 bytes of the
+ * stored strings without decoding them, so opening a snapshot never rehashes or copies it to the heap.
+ * add and delete throw UnsupportedOperationException; use SetSnapshot.restore for a modifiable set.
+ */
+public class MappedStringSet extends SimpleHashSet {
+
+    /** the mapped snapshot */
+    private final ByteBuffer buffer;
+
+    /** the layout of the table (SetSnapshot.CHAINED or SetSnapshot.CLOSED) */
+    private final int layout;
+
+    /** the number of cells or buckets of the table */
+    private final int capacity;
+
+    /** the number of strings */
+    private final int size;
+
+    /** the position of the first index entry holding an offset and a hash */
+    private final int entriesStart;
+
+    /** the position of the first string record */
+    private final int dataStart;
+
+
+    /**
+     * Constructs a set over a mapped snapshot that was already validated by SetSnapshot
+     * @param buffer  the mapped snapshot
+     * @param upperLoadFactor  The upper load factor of the written set
+     * @param lowerLoadFactor  The lower load factor of the written set
+     * @param hasher  The hash-mixing stage of the written set
+     */
+    MappedStringSet(ByteBuffer buffer, float upperLoadFactor, float lowerLoadFactor, StringHasher hasher) {
+        super(upperLoadFactor, lowerLoadFactor, hasher);
+        this.buffer = buffer;
+        this.layout = buffer.getInt(8);
+        this.capacity = buffer.getInt(40);
+        this.size = buffer.getInt(44);
+        capacityMinusOne = capacity - 1;
+        int bucketsLength = layout == SetSnapshot.CLOSED ? 0 : Integer.BYTES * (capacity + 1);
+        this.entriesStart = SetSnapshot.HEADER_SIZE + bucketsLength;
+        this.dataStart = entriesStart + 2 * Integer.BYTES * buffer.getInt(48);
+    }
+
+
+    /**
+     * Not supported, the set is read-only.
+     * @param newValue New value to add to the set
+     * @return never returns
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean add(String newValue) {
+        throw new UnsupportedOperationException("a mapped snapshot is read-only");
+    }
+
+
+    /**
+     * Look for a specified value in the set.
+     *
+     * @param searchVal Value to search for
+     * @return True iff searchVal is found in the set
+     */
+    @Override
+    public boolean contains(String searchVal) {
+        int hash = hash(searchVal);
+        if (layout == SetSnapshot.CLOSED) {
+            for (int i = 0; i < capacity; i++) {
+                int entry = ClosedHashSet.getIndex(hash, i, capacityMinusOne);
+                int offset = buffer.getInt(entriesStart + 2 * Integer.BYTES * entry);
+                if (offset == SetSnapshot.EMPTY) {
+                    return false;  // an empty cell ends the probe sequence
+                }
+                if (offset != SetSnapshot.DELETED && matches(entry, offset, hash, searchVal)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int bucket = clamp(hash);
+        int end = buffer.getInt(SetSnapshot.HEADER_SIZE + Integer.BYTES * (bucket + 1));
+        for (int entry = buffer.getInt(SetSnapshot.HEADER_SIZE + Integer.BYTES * bucket); entry < end; entry++) {
+            if (matches(entry, buffer.getInt(entriesStart + 2 * Integer.BYTES * entry), hash, searchVal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Not supported, the set is read-only.
+     * @param toDelete Value to delete
+     * @return never returns
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean delete(String toDelete) {
+        throw new UnsupportedOperationException("a mapped snapshot is read-only");
+    }
+
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * The capacity of the table that was written.
+     * @return  The capacity (number of cells or buckets) of the table.
+     */
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+
+    /**
+     * @param entry  the index of an index entry
+     * @param offset  the offset of the entry's string record
+     * @param hash  the hash of the value
+     * @param searchVal  the value
+     * @return True iff the entry holds the value
+     */
+    private boolean matches(int entry, int offset, int hash, String searchVal) {
+        if (buffer.getInt(entriesStart + 2 * Integer.BYTES * entry + Integer.BYTES) != hash) {
+            return false;
+        }
+        int position = dataStart + offset;
+        return Utf8.equals(searchVal, buffer, position + Integer.BYTES, buffer.getInt(position));
+    }
+
+
+}
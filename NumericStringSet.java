@@ -0,0 +1,124 @@
+/**
+ * a set of strings that keeps the strings that are canonical decimal longs (like "42" or "-7", but not "007",
+ * "+7" or "-0") as primitives in a LongOpenHashSet, and any other string in a ClosedHashSet. Since a
+ * canonical string is the only string of its value, the parsed value stands for the string exactly, so
+ * the set behaves like a set of strings while a numeric key costs 8 bytes and no equals call.
+ */
+public class NumericStringSet implements SimpleSet {
+
+    /** the digits of Long.MAX_VALUE (the largest canonical positive number of 19 digits) */
+    private static final String MAX_DIGITS = "9223372036854775807";
+
+    /** the digits of Long.MIN_VALUE (the largest canonical negative number of 19 digits) */
+    private static final String MIN_DIGITS = "9223372036854775808";
+
+    /** the strings that are canonical longs */
+    private final LongOpenHashSet numbers;
+
+    /** the other strings */
+    private final ClosedHashSet others;
+
+
+    /**
+     * A default constructor. Constructs a new, empty set whose tables have the default initial capacity (16),
+     * upper load factor (0.75) and lower load factor (0.25).
+     */
+    public NumericStringSet() {
+        this(0.75f, 0.25f);
+    }
+
+
+    /**
+     * Constructs a new, empty set whose tables have the specified load factors.
+     * @param upperLoadFactor  The upper load factor of the hash tables (must be smaller than 1)
+     * @param lowerLoadFactor  The lower load factor of the hash tables
+     */
+    public NumericStringSet(float upperLoadFactor, float lowerLoadFactor) {
+        numbers = new LongOpenHashSet(upperLoadFactor, lowerLoadFactor);
+        others = new ClosedHashSet(upperLoadFactor, lowerLoadFactor);
+    }
+
+
+    /**
+     * Add a specified element to the set if it's not already in it.
+     *
+     * @param newValue New value to add to the set
+     * @return False iff newValue already exists in the set
+     */
+    @Override
+    public boolean add(String newValue) {
+        return isCanonicalLong(newValue) ? numbers.add(Long.parseLong(newValue)) : others.add(newValue);
+    }
+
+
+    /**
+     * Look for a specified value in the set.
+     *
+     * @param searchVal Value to search for
+     * @return True iff searchVal is found in the set
+     */
+    @Override
+    public boolean contains(String searchVal) {
+        if (isCanonicalLong(searchVal)) {
+            return numbers.contains(Long.parseLong(searchVal));
+        }
+        return others.contains(searchVal);
+    }
+
+
+    /**
+     * Remove the input element from the set.
+     *
+     * @param toDelete Value to delete
+     * @return True iff toDelete is found and deleted
+     */
+    @Override
+    public boolean delete(String toDelete) {
+        return isCanonicalLong(toDelete) ? numbers.delete(Long.parseLong(toDelete)) : others.delete(toDelete);
+    }
+
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    @Override
+    public int size() {
+        return numbers.size() + others.size();
+    }
+
+
+    /**
+     * @return The number of strings kept as primitives
+     */
+    public int numericSize() {
+        return numbers.size();
+    }
+
+
+    /**
+     * Checks that a string is the canonical decimal form of a long (the form Long.toString returns): an
+     * optional minus, and 1 to 19 digits without leading zeros, within the range of a long.
+     * @param s  the string
+     * @return True iff Long.toString(Long.parseLong(s)) equals s
+     */
+    static boolean isCanonicalLong(String s) {
+        boolean negative = !s.isEmpty() && s.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        int digits = s.length() - start;
+        if (digits < 1 || digits > MAX_DIGITS.length() || (s.charAt(start) == '0' && (digits > 1 || negative))) {
+            return false;  // empty, too long, or a leading zero (or "-0")
+        }
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        if (digits == MAX_DIGITS.length()) {  // same number of digits as the bound, compare them as text
+            return s.substring(start).compareTo(negative ? MIN_DIGITS : MAX_DIGITS) <= 0;
+        }
+        return true;
+    }
+
+
+}
@@ -0,0 +1,457 @@
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * a hash-set that keeps its strings outside the Java heap. Extends SimpleHashSet.
+ * The strings are stored as UTF-8 bytes in a ByteArena (direct memory, or a memory-mapped file; an unpaired
+ * surrogate is stored as its own 3 byte sequence, see Utf8, so two strings never share a record), and the
+ * table only holds the long reference of each string's record and its hash, so a full cell costs 12 bytes
+ * of heap instead of a String object. The table uses open addressing with linear probing and backward-shift
+ * deletion. Strings are hashed and compared one code point at a time against the stored bytes, so a lookup
+ * never builds a String or a byte array. Unlike the other sets, the hash is computed over the UTF-8 bytes
+ * (Utf8.hash), so the byte[] and ByteBuffer overloads find the same strings without decoding them. Bytes that
+ * are not well-formed UTF-8 are decoded with replacement like in SimpleHashSet, so they are never stored raw.
+ */
+public class OffHeapStringSet extends SimpleHashSet {
+
+    /** the reference of an empty cell (a record reference is never negative) */
+    private static final long EMPTY = -1;
+
+    /** the smallest capacity of the table */
+    private static final int MIN_CAPACITY = 16;
+
+    /** the store of the strings' bytes */
+    private ByteArena arena;
+
+    /** the reference of the record of the string in each cell */
+    private long[] refs;
+
+    /** the hash of the string in each cell */
+    private int[] hashes;
+
+    /** the current number of elements */
+    private int size = 0;
+
+    /** a copy of the bytes of a key read from a buffer without an array (only grows) */
+    private byte[] keyBytes = new byte[0];
+
+
+    /**
+     * A default constructor. Constructs a new, empty table in direct memory with default initial capacity
+     * (16), upper load factor (0.75) and lower load factor (0.25).
+     */
+    public OffHeapStringSet() {
+        this(0.75f, 0.25f);
+    }
+
+
+    /**
+     * Constructs a new, empty table in direct memory with the specified load factors, and the default
+     * initial capacity (16).
+     * @param upperLoadFactor  The upper load factor of the hash table (must be smaller than 1)
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     */
+    public OffHeapStringSet(float upperLoadFactor, float lowerLoadFactor) {
+        this(upperLoadFactor, lowerLoadFactor, new ByteArena());
+    }
+
+
+    /**
+     * Constructs a new, empty table whose strings are stored in a memory-mapped file, with the default
+     * initial capacity (16), upper load factor (0.75) and lower load factor (0.25).
+     * @param file  the file to map (created or truncated)
+     */
+    public OffHeapStringSet(Path file) {
+        this(0.75f, 0.25f, new ByteArena(file));
+    }
+
+
+    /**
+     * Constructs a new, empty table with the specified load factors and arena.
+     * @param upperLoadFactor  The upper load factor of the hash table (must be smaller than 1)
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     * @param arena  The store of the strings' bytes
+     */
+    private OffHeapStringSet(float upperLoadFactor, float lowerLoadFactor, ByteArena arena) {
+        super(upperLoadFactor, lowerLoadFactor);
+        if (upperLoadFactor >= 1) {
+            throw new IllegalArgumentException("the upper load factor must be smaller than 1");
+        }
+        this.arena = arena;
+        allocate(INITIAL_CAPACITY);
+    }
+
+
+    /**
+     * Data constructor - builds the hash set by adding the elements one by one. Duplicate values should be
+     * ignored. The new table has the default values of initial capacity (16), upper load factor (0.75),
+     * and lower load factor (0.25).
+     * @param data  Values to add to the set.
+     */
+    public OffHeapStringSet(java.lang.String[] data) {
+        this();
+        addAll(data);
+    }
+
+
+    /**
+     * Add a specified element to the set if it's not already in it.
+     *
+     * @param newValue New value to add to the set
+     * @return False iff newValue already exists in the set
+     */
+    @Override
+    public boolean add(String newValue) {
+        int hash = Utf8.hash(newValue);
+        if (findIndex(newValue, hash) != -1) {  // to not allow duplicates
+            return false;
+        }
+        insert(arena.append(newValue, Utf8.encodedLength(newValue)), hash);
+        return true;
+    }
+
+
+    /**
+     * Add the string whose UTF-8 encoding is given to the set if it's not already in it. Well-formed bytes are
+     * hashed, compared and stored as they are; other bytes are decoded with replacement by SimpleHashSet.
+     * @param bytes  an array holding the UTF-8 bytes of the string
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @return False iff the string already exists in the set
+     */
+    @Override
+    public boolean add(byte[] bytes, int offset, int length) {
+        if (!isWellFormed(bytes, offset, length)) {
+            return super.add(bytes, offset, length);
+        }
+        int hash = Utf8.hash(bytes, offset, length);
+        if (findIndex(bytes, offset, length, hash) != -1) {
+            return false;
+        }
+        insert(arena.append(bytes, offset, length), hash);
+        return true;
+    }
+
+
+    /**
+     * Look for a specified value in the set.
+     *
+     * @param searchVal Value to search for
+     * @return True iff searchVal is found in the set
+     */
+    @Override
+    public boolean contains(String searchVal) {
+        return findIndex(searchVal, Utf8.hash(searchVal)) != -1;
+    }
+
+
+    /**
+     * Look for the string whose UTF-8 encoding is given in the set.
+     * @param bytes  an array holding the UTF-8 bytes of the string
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @return True iff the string is found in the set
+     */
+    @Override
+    public boolean contains(byte[] bytes, int offset, int length) {
+        if (!isWellFormed(bytes, offset, length)) {
+            return super.contains(bytes, offset, length);
+        }
+        return findIndex(bytes, offset, length, Utf8.hash(bytes, offset, length)) != -1;
+    }
+
+
+    /**
+     * Remove the input element from the set.
+     *
+     * @param toDelete Value to delete
+     * @return True iff toDelete is found and deleted
+     */
+    @Override
+    public boolean delete(String toDelete) {
+        return deleteAt(findIndex(toDelete, Utf8.hash(toDelete)));
+    }
+
+
+    /**
+     * Remove the string whose UTF-8 encoding is given from the set.
+     * @param bytes  an array holding the UTF-8 bytes of the string
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @return True iff the string is found and deleted
+     */
+    @Override
+    public boolean delete(byte[] bytes, int offset, int length) {
+        if (!isWellFormed(bytes, offset, length)) {
+            return super.delete(bytes, offset, length);
+        }
+        return deleteAt(findIndex(bytes, offset, length, Utf8.hash(bytes, offset, length)));
+    }
+
+
+    /**
+     * Add the string whose UTF-8 encoding is stored in a buffer to the set if it's not already in it.
+     * @param buffer  the buffer holding the UTF-8 bytes of the string (its position and limit are not changed)
+     * @param position  the position of the first byte in the buffer
+     * @param length  the number of bytes
+     * @return False iff the string already exists in the set
+     */
+    @Override
+    public boolean add(ByteBuffer buffer, int position, int length) {
+        return add(keyArray(buffer, position, length), keyOffset(buffer, position), length);
+    }
+
+
+    /**
+     * Look for the string whose UTF-8 encoding is stored in a buffer in the set.
+     * @param buffer  the buffer holding the UTF-8 bytes of the string (its position and limit are not changed)
+     * @param position  the position of the first byte in the buffer
+     * @param length  the number of bytes
+     * @return True iff the string is found in the set
+     */
+    @Override
+    public boolean contains(ByteBuffer buffer, int position, int length) {
+        return contains(keyArray(buffer, position, length), keyOffset(buffer, position), length);
+    }
+
+
+    /**
+     * Remove the string whose UTF-8 encoding is stored in a buffer from the set.
+     * @param buffer  the buffer holding the UTF-8 bytes of the string (its position and limit are not changed)
+     * @param position  the position of the first byte in the buffer
+     * @param length  the number of bytes
+     * @return True iff the string is found and deleted
+     */
+    @Override
+    public boolean delete(ByteBuffer buffer, int position, int length) {
+        return delete(keyArray(buffer, position, length), keyOffset(buffer, position), length);
+    }
+
+
+    /**
+     * @param bytes  an array holding the bytes of a key
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @return true iff the bytes are in the array and are well-formed UTF-8
+     */
+    private static boolean isWellFormed(byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        return Utf8.isWellFormed(bytes, offset, length);
+    }
+
+
+    /**
+     * @param buffer  a buffer holding the bytes of a key
+     * @param position  the position of the first byte in the buffer
+     * @param length  the number of bytes
+     * @return the array behind the buffer, or else keyBytes with a copy of the key's bytes at index 0
+     */
+    private byte[] keyArray(ByteBuffer buffer, int position, int length) {
+        Objects.checkFromIndexSize(position, length, buffer.limit());
+        if (buffer.hasArray()) {
+            return buffer.array();
+        }
+        if (keyBytes.length < length) {
+            keyBytes = new byte[Math.max(length, 2 * keyBytes.length)];
+        }
+        buffer.get(position, keyBytes, 0, length);
+        return keyBytes;
+    }
+
+
+    /**
+     * @param buffer  a buffer holding the bytes of a key
+     * @param position  the position of the first byte in the buffer
+     * @return the index of the first byte in the array that keyArray returns
+     */
+    private static int keyOffset(ByteBuffer buffer, int position) {
+        return buffer.hasArray() ? buffer.arrayOffset() + position : 0;
+    }
+
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * The current capacity of the table.
+     * @return  The current capacity (number of cells) of the table.
+     */
+    @Override
+    public int capacity() {
+        return refs.length;
+    }
+
+
+    /**
+     * @return the number of off-heap bytes taken by the strings (including deleted ones not yet compacted)
+     */
+    public long offHeapBytes() {
+        return arena.usedBytes();
+    }
+
+
+    /**
+     * Closes the file of a set stored in a memory-mapped file. The set can't be used afterwards.
+     */
+    public void close() {
+        arena.close();
+    }
+
+
+    /**
+     * Looks for a string in the table, from its home cell until the string or an empty cell is found
+     * @param searchVal  the string to look for
+     * @param hash  the hash of its UTF-8 bytes
+     * @return the index of the cell holding the string, or -1 if it is not in the table
+     */
+    private int findIndex(CharSequence searchVal, int hash) {
+        for (int index = clamp(hash); refs[index] != EMPTY; index = (index + 1) & capacityMinusOne) {
+            long ref = refs[index];
+            if (hashes[index] == hash
+                    && Utf8.equals(searchVal, arena.chunk(ref), arena.start(ref), arena.length(ref))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Looks for a string given by its UTF-8 bytes in the table
+     * @param bytes  an array holding the UTF-8 bytes of the string
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @param hash  the hash of the bytes
+     * @return the index of the cell holding the string, or -1 if it is not in the table
+     */
+    private int findIndex(byte[] bytes, int offset, int length, int hash) {
+        for (int index = clamp(hash); refs[index] != EMPTY; index = (index + 1) & capacityMinusOne) {
+            long ref = refs[index];
+            if (hashes[index] == hash
+                    && Utf8.equals(bytes, offset, length, arena.chunk(ref), arena.start(ref), arena.length(ref))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Adds the record of a string that is not in the set to the table, growing it first if needed
+     * @param ref  the reference of the record
+     * @param hash  the hash of the string
+     */
+    private void insert(long ref, int hash) {
+        double load = (double) (this.size + 1) / refs.length;  // calculate the load
+        if (load > getUpperLoadFactor()) {
+            rehash(refs.length * 2);  // rehash to a new table (two times as big)
+        }
+        place(ref, hash);
+        size++;
+    }
+
+
+    /**
+     * Puts a record in the first empty cell from the home cell of its hash
+     * @param ref  the reference of the record
+     * @param hash  the hash of its string
+     */
+    private void place(long ref, int hash) {
+        int index = clamp(hash);
+        while (refs[index] != EMPTY) {
+            index = (index + 1) & capacityMinusOne;
+        }
+        refs[index] = ref;
+        hashes[index] = hash;
+    }
+
+
+    /**
+     * Removes the string in a cell: its record is freed and the rest of its cluster is shifted back, so
+     * every string stays reachable from its home cell without deleted flags
+     * @param index  the index of the cell, or -1 if the string wasn't found
+     * @return True iff a string was removed
+     */
+    private boolean deleteAt(int index) {
+        if (index == -1) {
+            return false;
+        }
+        arena.free(refs[index]);
+        int hole = index;
+        for (int next = (hole + 1) & capacityMinusOne; refs[next] != EMPTY; next = (next + 1) & capacityMinusOne) {
+            // a string may fill the hole only if the hole is between its home cell and its cell
+            if (((next - clamp(hashes[next])) & capacityMinusOne) >= ((next - hole) & capacityMinusOne)) {
+                refs[hole] = refs[next];
+                hashes[hole] = hashes[next];
+                hole = next;
+            }
+        }
+        refs[hole] = EMPTY;
+        size--;
+        double load = (double) size / refs.length;  // calculate the load
+        if (load < getLowerLoadFactor() && refs.length > MIN_CAPACITY) {
+            rehash(refs.length / 2);  // rehash to a new table (two times as small)
+        } else if (arena.garbageBytes() > ByteArena.CHUNK_SIZE && arena.garbageBytes() > arena.usedBytes() / 2) {
+            compact();
+        }
+        return true;
+    }
+
+
+    /**
+     * Copies the strings of the set to a new direct-memory arena, dropping the bytes of deleted strings.
+     * A file-mapped arena is not compacted, since its file is the store the caller asked for.
+     */
+    private void compact() {
+        if (arena.isMapped()) {
+            return;
+        }
+        ByteArena compacted = new ByteArena();
+        for (int i = 0; i < refs.length; i++) {
+            if (refs[i] != EMPTY) {
+                refs[i] = compacted.copy(arena, refs[i]);
+            }
+        }
+        arena = compacted;
+    }
+
+
+    /**
+     * Allocates new, empty arrays of a given capacity
+     * @param newCapacity  the new capacity (a power of two)
+     */
+    private void allocate(int newCapacity) {
+        capacityMinusOne = newCapacity - 1;
+        refs = new long[newCapacity];
+        Arrays.fill(refs, EMPTY);
+        hashes = new int[newCapacity];
+    }
+
+
+    /**
+     * This method rehashes the table (copy references to new table) bigger or smaller one depends on the
+     * load factor and current number of elements. The stored hashes are reused and the strings' bytes stay
+     * where they are.
+     * @param newTableSize  the size of the new rehashed table
+     */
+    private void rehash(int newTableSize) {
+        long[] oldRefs = refs;
+        int[] oldHashes = hashes;
+        allocate(newTableSize);
+        for (int i = 0; i < oldRefs.length; i++) {
+            if (oldRefs[i] != EMPTY) {
+                place(oldRefs[i], oldHashes[i]);
+            }
+        }
+    }
+
+
+}
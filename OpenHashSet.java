@@ -1,20 +1,54 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * a hash-set based on chaining. Extends SimpleHashSet.
  * Note: the capacity of a chaining based hash-set is simply the number of buckets (the length of the array
  * of lists).
  */
-public class OpenHashSet extends SimpleHashSet {
+public class OpenHashSet extends SimpleHashSet implements Iterable<String>, SlotTable {
 
-    /** default initial capacity */
-    private final int INITIAL_CAPACITY = 16;
+    /** a chain this long is moved to a tree bucket (once the table is large enough) */
+    private static final int TREEIFY_THRESHOLD = 8;
 
-    /** array contains the wrapper-class (each cell in this array is a list of strings) */
-    private LinkedStringList [] hashTable;
+    /** a tree bucket this small is moved back to a chain */
+    private static final int UNTREEIFY_THRESHOLD = 6;
+
+    /** the smallest table whose chains are treeified (smaller tables are expected to grow instead) */
+    private static final int MIN_TREEIFY_CAPACITY = 64;
+
+    /** array of chains (each cell in this array is the first node of a chain of strings, or null) */
+    private StringNode [] hashTable;
 
     /** the current number of elements */
     private int size = 0;
 
+    /** the smallest array addAll fills in parallel */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** number of buckets of the old table moved by each operation during an incremental rehash */
+    private static final int MIGRATION_STEP = 8;
+
+    /** true if a rehash moves the strings a few buckets per operation instead of all at once */
+    private boolean incrementalRehash = false;
+
+    /** the table being emptied during an incremental rehash (null when no rehash is in progress). A bucket
+     * that was moved is set to null */
+    private StringNode [] oldTable;
+
+    /** the index of the next bucket of the old table to move */
+    private int migrateIndex;
+
+    /** the number of successful adds and deletes, so the iterators can fail fast */
+    private int modCount = 0;
+
 
     /**
      * A default constructor. Constructs a new, empty table with default initial capacity (16),
@@ -22,7 +56,7 @@ public class OpenHashSet extends SimpleHashSet {
      */
     public OpenHashSet(){
         super(0.75f, 0.25f);
-        hashTable = new LinkedStringList[INITIAL_CAPACITY];
+        hashTable = new StringNode[INITIAL_CAPACITY];
     }
 
     /**
@@ -32,20 +66,73 @@ public class OpenHashSet extends SimpleHashSet {
      */
     public OpenHashSet(float upperLoadFactor, float lowerLoadFactor) {
         super(upperLoadFactor, lowerLoadFactor);
-        hashTable = new LinkedStringList[INITIAL_CAPACITY];
+        hashTable = new StringNode[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Constructs a new, empty table with the specified load factors and hash-mixing stage, and the default
+     * initial capacity (16).
+     * @param upperLoadFactor  The upper load factor of the hash table
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     * @param hasher  The hash-mixing stage (e.g. a SipHasher for untrusted input)
+     */
+    public OpenHashSet(float upperLoadFactor, float lowerLoadFactor, StringHasher hasher) {
+        super(upperLoadFactor, lowerLoadFactor, hasher);
+        hashTable = new StringNode[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Constructs a new, empty table with the default load factors, and a capacity that holds an expected number
+     * of elements without a rehash (so loading them does not double the table again and again).
+     * @param expectedSize  The number of elements the set is expected to hold
+     */
+    public OpenHashSet(int expectedSize) {
+        this(0.75f, 0.25f, SpreadingHasher.INSTANCE, PowerOfTwoGrowth.INSTANCE, expectedSize);
     }
 
     /**
-     * Data constructor - builds the hash set by adding the elements one by one. Duplicate values should be
-     * ignored. The new table has the default values of initial capacity (16), upper load factor (0.75),
+     * Constructs a new, empty table with the specified load factors, hash-mixing stage and growth policy, and
+     * a capacity that holds an expected number of elements without a rehash.
+     * @param upperLoadFactor  The upper load factor of the hash table
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     * @param hasher  The hash-mixing stage (e.g. a SipHasher for untrusted input)
+     * @param growthPolicy  The policy that picks the table sizes (e.g. a FastRangeGrowth for tables of any size)
+     * @param expectedSize  The number of elements the set is expected to hold
+     */
+    public OpenHashSet(float upperLoadFactor, float lowerLoadFactor, StringHasher hasher, GrowthPolicy growthPolicy,
+                       int expectedSize) {
+        super(upperLoadFactor, lowerLoadFactor, hasher, growthPolicy);
+        int capacity = capacityFor(expectedSize);
+        capacityMinusOne = capacity - 1;
+        hashTable = new StringNode[capacity];
+    }
+
+    /**
+     * Data constructor - builds the hash set by adding the elements (with addAll, so the table is sized once).
+     * Duplicate values should be ignored. The new table has the default values of upper load factor (0.75),
      * and lower load factor (0.25).
      * @param data  Values to add to the set.
      */
     public OpenHashSet(java.lang.String[] data){
         this();
-        for (String s: data) {
-            this.add(s);
-        }
+        addAll(data);
+    }
+
+    /**
+     * Restores a table written by SetSnapshot, bucket by bucket, without rehashing it. Long chains are moved
+     * to tree buckets again.
+     * @param upperLoadFactor  The upper load factor of the hash table
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     * @param hasher  The hash-mixing stage the table was built with
+     * @param table  the chains of the table
+     * @param size  the number of strings in the table
+     */
+    OpenHashSet(float upperLoadFactor, float lowerLoadFactor, StringHasher hasher, StringNode[] table, int size) {
+        super(upperLoadFactor, lowerLoadFactor, hasher);
+        capacityMinusOne = table.length - 1;
+        hashTable = table;
+        this.size = size;
+        treeifyLongChains(0, table.length);
     }
 
 
@@ -58,20 +145,350 @@ public class OpenHashSet extends SimpleHashSet {
      */
     @Override
     public boolean add(String newValue) {
-        int bucket = clamp(newValue.hashCode());  // the index in the hashtable that will hold this value
-        if (hashTable[bucket] == null){
-            hashTable[bucket] = new LinkedStringList();  // create a new linked list of strings(wrapper-class)
+        int hash = hash(newValue);
+        stepRehash(hash);
+        if (!insert(newValue, hash, true)) {
+            return false;
+        }
+        countAdded();
+        return true;
+    }
+
+
+    /**
+     * Add the string of a sequence of chars to the set if it's not already in it. The chars are compared with
+     * the strings of their bucket in place; the string is only created if it is added.
+     *
+     * @param newValue The chars of the new value
+     * @return False iff the value already exists in the set
+     */
+    @Override
+    public boolean add(CharSequence newValue) {
+        if (newValue instanceof String) {
+            return add((String) newValue);
+        }
+        int hash = hash(newValue);
+        stepRehash(hash);
+        if (find(hashTable[clamp(hash)], newValue, hash)) {  // to not allow duplicates
+            return false;
+        }
+        insert(newValue.toString(), hash, true);
+        countAdded();
+        return true;
+    }
+
+
+    /**
+     * Counts a value that was just linked, and grows the table if it crossed the upper load factor
+     */
+    private void countAdded() {
+        modCount++;
+        this.size += 1;  // increase number of elements by one
+        double load = (double)this.size/hashTable.length;  // calculate the load
+        if(load > getUpperLoadFactor()) {
+            rehash(getGrowthPolicy().grow(hashTable.length));  // rehash to a new, bigger table
+        }
+    }
+
+
+
+    /**
+     * Adds all the values of an array to the set. The table is sized once for all the values (instead of
+     * being doubled again and again while they are added), and the values are added without load checks.
+     *
+     * @param data  Values to add to the set
+     * @param dedupe  false if the caller knows the values are distinct and not in the set, so they are linked
+     *                without looking for duplicates
+     * @param parallel  true to hash the values and fill the table with several threads, each filling its own
+     *                  range of buckets (only used for large arrays)
+     * @return The number of values that were added
+     */
+    public int addAll(String[] data, boolean dedupe, boolean parallel) {
+        finishRehash();
+        int neededCapacity = capacityFor(size + data.length);
+        if (neededCapacity > hashTable.length) {
+            rehash(neededCapacity);
+            finishRehash();
+        }
+        int added;
+        if (parallel && data.length >= PARALLEL_THRESHOLD) {
+            added = addAllParallel(data, dedupe);
+        } else {
+            added = 0;
+            for (String s : data) {
+                added += insert(s, hash(s), dedupe) ? 1 : 0;
+            }
+            if (!dedupe) {
+                treeifyLongChains(0, hashTable.length);
+            }
+        }
+        size += added;
+        modCount += added > 0 ? 1 : 0;
+        return added;
+    }
+
+
+    /**
+     * Adds all the values of an array to the set, sized once for all the values.
+     *
+     * @param data  Values to add to the set
+     * @return The number of values that were added
+     */
+    @Override
+    public int addAll(String[] data) {
+        return addAll(data, true, false);
+    }
+
+
+    /**
+     * Adds a batch of values, a group at a time: the values of a group are hashed and the heads of their
+     * buckets are loaded together (so their cache misses are in flight at once) before they are linked one by
+     * one. A rehash in progress is finished first.
+     *
+     * @param data  Values to add to the set
+     * @param added  set to true at the index of each value that was added (false for a value that was in the
+     *               set, or earlier in the batch); must be at least as long as data
+     * @return The number of values that were added
+     */
+    @Override
+    public int addAll(String[] data, boolean[] added) {
+        checkBatch(data, added);
+        finishRehash();
+        int[] groupHashes = new int[Math.min(BATCH_GROUP, data.length)];
+        StringNode[] heads = new StringNode[groupHashes.length];
+        int count = 0;
+        for (int start = 0; start < data.length; start += BATCH_GROUP) {
+            int groupSize = Math.min(BATCH_GROUP, data.length - start);
+            if (size + groupSize > getUpperLoadFactor() * hashTable.length) {
+                rehash(Math.max(getGrowthPolicy().grow(hashTable.length), capacityFor(size + groupSize)));
+                finishRehash();
+            }
+            loadGroup(data, start, groupSize, groupHashes, heads);
+            for (int j = 0; j < groupSize; j++) {
+                // the buckets may have changed by earlier values of the group, so each value is looked up
+                int i = start + j;
+                added[i] = insert(data[i], groupHashes[j], true);
+                if (added[i]) {
+                    modCount++;
+                    size++;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Looks up a batch of values, a group at a time: the values of a group are hashed and the heads of their
+     * buckets are loaded together (so their cache misses are in flight at once), and then each value is
+     * looked up in its loaded bucket. A rehash in progress is finished first.
+     *
+     * @param keys  Values to search for
+     * @param found  set to true at the index of each value that is in the set, false for the others; must be
+     *               at least as long as keys
+     * @return The number of values that were found
+     */
+    @Override
+    public int containsAll(String[] keys, boolean[] found) {
+        checkBatch(keys, found);
+        finishRehash();
+        int[] groupHashes = new int[Math.min(BATCH_GROUP, keys.length)];
+        StringNode[] heads = new StringNode[groupHashes.length];
+        int count = 0;
+        for (int start = 0; start < keys.length; start += BATCH_GROUP) {
+            int groupSize = Math.min(BATCH_GROUP, keys.length - start);
+            loadGroup(keys, start, groupSize, groupHashes, heads);
+            for (int j = 0; j < groupSize; j++) {
+                boolean hit = find(heads[j], keys[start + j], groupHashes[j]);
+                found[start + j] = hit;
+                count += hit ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Hashes a group of values of a batch, and then loads the head of the bucket of each of them
+     * @param values  the values of the batch
+     * @param start  the index of the first value of the group
+     * @param groupSize  the number of values of the group
+     * @param groupHashes  filled with the hashes of the values
+     * @param heads  filled with the first node of the bucket of each value
+     */
+    private void loadGroup(String[] values, int start, int groupSize, int[] groupHashes, StringNode[] heads) {
+        for (int j = 0; j < groupSize; j++) {
+            groupHashes[j] = hash(values[start + j]);
         }
-        if (!hashTable[bucket].contains(newValue)){
-            hashTable[bucket].add(newValue);  // if it's not already in the table add it
-            this.size += 1;  // increase number of elements by one
-            double load = (double)this.size/hashTable.length;  // calculate the load
-            if(load > getUpperLoadFactor()) {
-                rehash(hashTable.length * 2);  // rehash to a new table (two times as big)
+        for (int j = 0; j < groupSize; j++) {  // independent loads, so their misses overlap
+            heads[j] = hashTable[clamp(groupHashes[j])];
+        }
+    }
+
+
+    /**
+     * Adds every string of another set to this set (the union of the two sets), sized once for all of them.
+     *
+     * @param other  a set that can be iterated (an OpenHashSet, a ClosedHashSet or a CollectionFacadeSet)
+     * @return The number of strings that were added
+     */
+    public int union(SimpleSet other) {
+        return other == this ? 0 : addAll(SetAlgebra.toArray(other));
+    }
+
+
+    /**
+     * Removes the strings that are not in another set (keeps the intersection of the two sets). The smaller
+     * set is iterated and the larger one probed: when the other set is the smaller one, the strings of the
+     * intersection are collected from it and the table is rebuilt once, at the size of the intersection.
+     *
+     * @param other  the other set
+     * @return The number of strings that were removed
+     */
+    public int retainAll(SimpleSet other) {
+        int before = size;
+        if (other.size() < size && SetAlgebra.isIterable(other)) {
+            String[] kept = SetAlgebra.select(other, this, true);
+            clear();
+            addAll(kept, !SetAlgebra.hasDistinctStrings(other), true);  // a list may hold a string twice
+        } else {
+            for (String s : SetAlgebra.select(this, other, false)) {
+                delete(s);
             }
+        }
+        return before - size;
+    }
+
+
+    /**
+     * Removes the strings that are in another set (keeps the difference of the two sets). The smaller set is
+     * iterated and the larger one probed.
+     *
+     * @param other  the other set
+     * @return The number of strings that were removed
+     */
+    public int removeAll(SimpleSet other) {
+        int before = size;
+        String[] removed = other.size() < size && SetAlgebra.isIterable(other)
+                ? SetAlgebra.toArray(other) : SetAlgebra.select(this, other, true);
+        for (String s : removed) {
+            delete(s);
+        }
+        return before - size;
+    }
+
+
+    /**
+     * Removes all the strings, and goes back to the initial capacity (16, or the nearest the growth policy
+     * allows).
+     */
+    public void clear() {
+        int capacity = getGrowthPolicy().sizeFor(INITIAL_CAPACITY);
+        capacityMinusOne = capacity - 1;
+        hashTable = new StringNode[capacity];
+        oldTable = null;
+        size = 0;
+        modCount++;
+    }
+
+
+    /**
+     * Builds an immutable copy of the set with a perfect hash (see FrozenStringSet), for a set that is only
+     * queried from now on. This set is not changed.
+     * @return the frozen copy
+     */
+    public FrozenStringSet freeze() {
+        return FrozenStringSet.freeze(this);
+    }
+
+
+    /**
+     * The parallel part of addAll. The values are hashed in parallel, grouped by the range of buckets they
+     * belong to, and then each range is filled by its own thread, so no two threads touch the same bucket.
+     * @param data  Values to add to the set
+     * @param dedupe  false if the values are known to be distinct and not in the set
+     * @return The number of values that were added
+     */
+    private int addAllParallel(String[] data, boolean dedupe) {
+        int[] hashes = new int[data.length];
+        IntStream.range(0, data.length).parallel().forEach(i -> hashes[i] = hash(data[i]));
+        int ranges = Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, hashTable.length);
+        int[] rangeStart = new int[ranges + 1];  // counting sort of the values by range
+        for (int hash : hashes) {
+            rangeStart[rangeOf(hash, ranges) + 1]++;
+        }
+        for (int range = 0; range < ranges; range++) {
+            rangeStart[range + 1] += rangeStart[range];
+        }
+        int[] order = new int[data.length];
+        int[] next = Arrays.copyOf(rangeStart, ranges);
+        for (int i = 0; i < data.length; i++) {
+            order[next[rangeOf(hashes[i], ranges)]++] = i;
+        }
+        return IntStream.range(0, ranges).parallel().map(range -> {
+            int added = 0;
+            for (int j = rangeStart[range]; j < rangeStart[range + 1]; j++) {
+                added += insert(data[order[j]], hashes[order[j]], dedupe) ? 1 : 0;
+            }
+            if (!dedupe) {
+                treeifyLongChains(firstBucketOf(range, ranges), firstBucketOf(range + 1, ranges));
+            }
+            return added;
+        }).sum();
+    }
+
+
+    /**
+     * @param hash  a hash
+     * @param ranges  number of ranges of buckets
+     * @return the range of the bucket of the hash
+     */
+    private int rangeOf(int hash, int ranges) {
+        return (int) ((long) clamp(hash) * ranges / hashTable.length);
+    }
+
+
+    /**
+     * @param range  a range of buckets (or the number of ranges, for the end of the last range)
+     * @param ranges  number of ranges of buckets
+     * @return the first bucket that rangeOf puts in the range, so a thread only treeifies its own buckets
+     */
+    private int firstBucketOf(int range, int ranges) {
+        return (int) (((long) range * hashTable.length + ranges - 1) / ranges);
+    }
+
+
+    /**
+     * Links a value to its bucket, with no load check
+     * @param value  the value to add
+     * @param hash  the hash of the value
+     * @param dedupe  false if the value is known not to be in the set (it is linked without a lookup, and
+     *                the chain is not checked for treeifying)
+     * @return False iff value already exists in the set
+     */
+    private boolean insert(String value, int hash, boolean dedupe) {
+        int bucket = clamp(hash);  // the index in the hashtable that will hold this value
+        StringNode head = hashTable[bucket];
+        if (head instanceof TreeBucket) {
+            return ((TreeBucket) head).tree.add(value);
+        }
+        if (!dedupe) {
+            hashTable[bucket] = new StringNode(hash, value, head);  // link at the head of the chain
             return true;
         }
-        return false;
+        int chainLength = 0;
+        for (StringNode node = head; node != null; node = node.next) {
+            if (node.hash == hash && node.value.equals(value)) {
+                return false;
+            }
+            chainLength++;
+        }
+        hashTable[bucket] = new StringNode(hash, value, head);  // link at the head of the chain
+        if (chainLength + 1 >= TREEIFY_THRESHOLD && hashTable.length >= MIN_TREEIFY_CAPACITY) {
+            treeify(bucket);
+        }
+        return true;
     }
 
 
@@ -84,15 +501,79 @@ public class OpenHashSet extends SimpleHashSet {
      */
     @Override
     public boolean contains(String searchVal) {
-        for (LinkedStringList ls: hashTable) {
-            if (ls==null){
-                continue;
-            }
-            if(ls.contains(searchVal)){
-                return true;
-            }
+        int hash = hash(searchVal);
+        stepRehash(hash);
+        return find(hashTable[clamp(hash)], searchVal, hash);
+    }
+
+
+    /**
+     * Look for a value in its bucket
+     * @param node  the first node of the bucket (or null)
+     * @param searchVal  the value to look for
+     * @param hash  the hash of the value
+     * @return True iff searchVal is in the bucket
+     */
+    private boolean find(StringNode node, String searchVal, int hash) {
+        if (node instanceof TreeBucket) {
+            return ((TreeBucket) node).tree.contains(searchVal);
+        }
+        int compared = 0;
+        boolean found = false;
+        while (node != null && !found) {
+            compared++;
+            found = node.hash == hash && node.value.equals(searchVal);
+            node = node.next;
+        }
+        HashSetMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.recordProbe(compared);
         }
-        return false;
+        return found;
+    }
+
+
+    /**
+     * Look for the string of a sequence of chars in the set, without creating the string (unless its bucket
+     * is a tree).
+     *
+     * @param searchVal The chars of the value to search for
+     * @return True iff the value is found in the set
+     */
+    @Override
+    public boolean contains(CharSequence searchVal) {
+        if (searchVal instanceof String) {
+            return contains((String) searchVal);
+        }
+        int hash = hash(searchVal);
+        stepRehash(hash);
+        return find(hashTable[clamp(hash)], searchVal, hash);
+    }
+
+
+    /**
+     * Look for a sequence of chars in its bucket, comparing them with the strings of the chain in place
+     * @param node  the first node of the bucket (or null)
+     * @param searchVal  the chars to look for
+     * @param hash  the hash of the chars
+     * @return True iff the string of the chars is in the bucket
+     */
+    private boolean find(StringNode node, CharSequence searchVal, int hash) {
+        if (node instanceof TreeBucket) {  // the tree compares strings, a tree bucket only holds colliding ones
+            return ((TreeBucket) node).tree.contains(searchVal.toString());
+        }
+        int compared = 0;
+        boolean found = false;
+        while (node != null && !found) {
+            compared++;
+            found = node.hash == hash && node.value.contentEquals(searchVal);
+            node = node.next;
+        }
+        HashSetMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.recordProbe(compared);
+        }
+        return found;
     }
 
 
@@ -105,19 +586,54 @@ public class OpenHashSet extends SimpleHashSet {
      */
     @Override
     public boolean delete(String toDelete) {
-        boolean isDeleted = false;  // flag if deleted or not
-        int bucketDel = clamp(toDelete.hashCode()); // index of the wrapper which contains value in the hashtable
-        if (hashTable[bucketDel] != null) {
-            if (hashTable[bucketDel].delete(toDelete)) {
-                isDeleted = true;  // value successfully deleted
-                size -= 1;  // decrease number of elements by one
-                double load = (double) size / hashTable.length;  // calculate the load
-                if (load < getLowerLoadFactor() && hashTable.length > 1) {
-                    rehash(hashTable.length / 2);  // rehash to a new table (two times as small)
-                }
+        return delete((CharSequence) toDelete);
+    }
+
+
+    /**
+     * Remove the string of a sequence of chars from the set, comparing the chars with the strings of their
+     * bucket in place.
+     *
+     * @param toDelete The chars of the value to delete
+     * @return True iff the value is found and deleted
+     */
+    @Override
+    public boolean delete(CharSequence toDelete) {
+        int hash = hash(toDelete);
+        stepRehash(hash);
+        int bucketDel = clamp(hash); // index of the chain which contains value in the hashtable
+        StringNode head = hashTable[bucketDel];
+        if (head instanceof TreeBucket) {
+            TreeBucket treeBucket = (TreeBucket) head;
+            if (!treeBucket.tree.remove(toDelete.toString())) {
+                return false;
+            }
+            if (treeBucket.tree.size() <= UNTREEIFY_THRESHOLD) {
+                untreeify(bucketDel);
+            }
+        } else {
+            StringNode previous = null;
+            StringNode node = head;
+            while (node != null && !(node.hash == hash && node.value.contentEquals(toDelete))) {
+                previous = node;
+                node = node.next;
+            }
+            if (node == null) {
+                return false;
+            }
+            if (previous == null) {
+                hashTable[bucketDel] = node.next;  // unlink the head of the chain
+            } else {
+                previous.next = node.next;  // unlink from the middle of the chain
             }
         }
-        return isDeleted;
+        modCount++;
+        size -= 1;  // decrease number of elements by one
+        int newCapacity = capacityAfterDelete(size, hashTable.length, 1);
+        if (newCapacity != hashTable.length) {
+            rehash(newCapacity);  // rehash to a new, smaller table
+        }
+        return true;  // value successfully deleted
     }
 
 
@@ -140,29 +656,273 @@ public class OpenHashSet extends SimpleHashSet {
     }
 
 
+    /**
+     * @return a fail-fast iterator over the strings of the set (a rehash in progress is finished first)
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+
+    /**
+     * @return a fail-fast spliterator over the strings of the set, split by ranges of the table
+     */
+    @Override
+    public Spliterator<String> spliterator() {
+        return new SlotSpliterator(this);
+    }
+
+
+    /**
+     * Passes every string of the set to an action, walking the table directly
+     * @param action  the action
+     */
+    @Override
+    public void forEach(Consumer<? super String> action) {
+        spliterator().forEachRemaining(action);
+    }
+
+
+    /**
+     * @return a sequential stream of the strings of the set
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+
+    /**
+     * @return a parallel stream of the strings of the set, whose threads read their own ranges of the table
+     */
+    public Stream<String> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+
+    /**
+     * Finishes a rehash in progress
+     * @return the number of buckets of the table
+     */
+    @Override
+    public int slotCount() {
+        finishRehash();
+        return hashTable.length;
+    }
+
+
+    /**
+     * Passes the strings of a bucket (a chain or a tree bucket) to an action
+     * @param slot  the index of the bucket
+     * @param action  the action
+     */
+    @Override
+    public void forEachInSlot(int slot, Consumer<? super String> action) {
+        StringNode node = hashTable[slot];
+        if (node instanceof TreeBucket) {
+            ((TreeBucket) node).tree.forEach(action);
+            return;
+        }
+        for (; node != null; node = node.next) {
+            action.accept(node.value);
+        }
+    }
+
+
+    /**
+     * @return the number of successful adds and deletes so far
+     */
+    @Override
+    public int modCount() {
+        return modCount;
+    }
+
+
+    /**
+     * Turns incremental rehashing on or off. When it is on, a rehash keeps the old table next to the new one
+     * and each add, contains and delete moves a few buckets of the old table (and the bucket of the value it
+     * looks for), instead of copying the whole table in the operation that crossed the load factor. Turning
+     * it off finishes a rehash in progress.
+     * @param incrementalRehash  true to rehash incrementally
+     */
+    public void setIncrementalRehash(boolean incrementalRehash) {
+        this.incrementalRehash = incrementalRehash;
+        if (!incrementalRehash) {
+            finishRehash();
+        }
+    }
+
+
+    /**
+     * @return true if an incremental rehash is in progress
+     */
+    public boolean isRehashing() {
+        return oldTable != null;
+    }
+
+
+    /**
+     * @return the buckets of the table, after finishing a rehash in progress (for SetSnapshot, not a copy)
+     */
+    StringNode[] table() {
+        finishRehash();
+        return hashTable;
+    }
+
+
+    /**
+     * move the strings of a chain to a tree bucket
+     * @param bucket  the index of the chain in the table
+     */
+    private void treeify(int bucket) {
+        TreeBucket treeBucket = new TreeBucket();
+        for (StringNode node = hashTable[bucket]; node != null; node = node.next) {
+            treeBucket.tree.add(node.value);
+        }
+        hashTable[bucket] = treeBucket;
+    }
+
+
+    /**
+     * move the strings of a tree bucket back to a chain
+     * @param bucket  the index of the tree bucket in the table
+     */
+    private void untreeify(int bucket) {
+        StringNode chain = null;
+        for (String value : ((TreeBucket) hashTable[bucket]).tree) {
+            chain = new StringNode(hash(value), value, chain);
+        }
+        hashTable[bucket] = chain;
+    }
+
+
+    /**
+     * move a chain to a tree bucket if it is long enough (and the table is large enough)
+     * @param bucket  the index of the chain in the table
+     */
+    private void treeifyIfLong(int bucket) {
+        if (hashTable.length < MIN_TREEIFY_CAPACITY || hashTable[bucket] instanceof TreeBucket) {
+            return;
+        }
+        int chainLength = 0;
+        for (StringNode node = hashTable[bucket]; node != null && chainLength < TREEIFY_THRESHOLD; node = node.next) {
+            chainLength++;
+        }
+        if (chainLength >= TREEIFY_THRESHOLD) {
+            treeify(bucket);
+        }
+    }
+
+
+    /**
+     * move the long chains of a range of buckets to tree buckets
+     * @param from  the first bucket of the range
+     * @param to  the bucket after the last bucket of the range
+     */
+    private void treeifyLongChains(int from, int to) {
+        for (int bucket = from; bucket < to; bucket++) {
+            treeifyIfLong(bucket);
+        }
+    }
+
+
     /**
      * This method rehashes the table (copy elements to new table) bigger or smaller one depends on the load
-     * factor and current number of elements.
+     * factor and current number of elements. In incremental mode the strings are moved later, by stepRehash.
      * @param newTableSize  the size of the new rehashed table
      */
     private void rehash(int newTableSize) {
+        HashSetMetrics metrics = getMetrics();
+        long timeBefore = metrics == null ? 0 : System.nanoTime();
+        finishRehash();  // a rehash that is still in progress is finished first
         capacityMinusOne = newTableSize - 1;
-        LinkedStringList[] hashTableNew = new LinkedStringList[newTableSize];
-        for (LinkedStringList ls: hashTable) {  // for each bucket in the old table
-            if (ls == null) {
-                continue;
-            }
-            // for each string in the bucket add it to the new table
-            for (Object val : ls) {
-                String strVal = val.toString();
-                int newBucket = clamp(strVal.hashCode());
-                if (hashTableNew[newBucket] == null){
-                    hashTableNew[newBucket] = new LinkedStringList();
-                }
-                hashTableNew[newBucket].add(strVal);
+        oldTable = hashTable;
+        migrateIndex = 0;
+        hashTable = new StringNode[newTableSize];  // assign hashtable to the new one
+        if (!incrementalRehash) {
+            finishRehash();
+        }
+        if (metrics != null) {
+            metrics.recordRehash(System.nanoTime() - timeBefore);
+        }
+    }
+
+
+    /**
+     * If an incremental rehash is in progress, move the bucket of the old table that may hold a value (so the
+     * value is in the new table), and the next few buckets of the old table
+     * @param hash  the hash of the value
+     */
+    private void stepRehash(int hash) {
+        if (oldTable == null) {
+            return;
+        }
+        migrateBucket(clamp(hash, oldTable.length));
+        int end = Math.min(migrateIndex + MIGRATION_STEP, oldTable.length);
+        for (; migrateIndex < end; migrateIndex++) {
+            migrateBucket(migrateIndex);
+        }
+        if (migrateIndex == oldTable.length) {  // every bucket was moved
+            oldTable = null;
+        }
+    }
+
+
+    /** move all the remaining buckets of the old table, if a rehash is in progress */
+    private void finishRehash() {
+        if (oldTable == null) {
+            return;
+        }
+        for (; migrateIndex < oldTable.length; migrateIndex++) {
+            migrateBucket(migrateIndex);
+        }
+        oldTable = null;
+    }
+
+
+    /**
+     * move the strings of a bucket of the old table to their buckets in the new table
+     * @param oldBucket  the index of the bucket in the old table
+     */
+    private void migrateBucket(int oldBucket) {
+        StringNode node = oldTable[oldBucket];
+        if (node == null) {
+            return;
+        }
+        oldTable[oldBucket] = null;
+        // the table may have grown by any factor (addAll sizes it for both sets at once), so the strings of the
+        // old bucket may go to any number of buckets: every bucket that receives one is checked for a long
+        // chain (a chain is counted only up to the threshold, so this stays cheap)
+        if (node instanceof TreeBucket) {
+            // link each string of the tree to its bucket in the new table
+            for (String value : ((TreeBucket) node).tree) {
+                treeifyIfLong(link(new StringNode(hash(value), value, null)));
+            }
+        } else {
+            // move each node of the chain to its bucket in the new table (the nodes are reused)
+            while (node != null) {
+                StringNode next = node.next;
+                treeifyIfLong(link(node));
+                node = next;
             }
         }
-        hashTable = hashTableNew;  // assign hashtable to the new one
+    }
+
+
+    /**
+     * link a node at the head of its bucket in the table (or add its string to the bucket's tree)
+     * @param node  the node to link
+     * @return the index of the bucket
+     */
+    private int link(StringNode node) {
+        int bucket = clamp(node.hash);  // the stored hash is reused
+        if (hashTable[bucket] instanceof TreeBucket) {
+            ((TreeBucket) hashTable[bucket]).tree.add(node.value);
+        } else {
+            node.next = hashTable[bucket];
+            hashTable[bucket] = node;
+        }
+        return bucket;
     }
 
 
@@ -0,0 +1,74 @@
+/**
+ * The default growth policy: table sizes are powers of two, the table doubles when it grows and halves when it
+ * shrinks, and a hash is reduced to an index by masking its low bits.
+ */
+public class PowerOfTwoGrowth implements GrowthPolicy {
+
+    /** the single instance of this policy (it has no state) */
+    public static final PowerOfTwoGrowth INSTANCE = new PowerOfTwoGrowth();
+
+    /** the largest power of two an int array can have */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+
+    /**
+     * Use INSTANCE instead
+     */
+    private PowerOfTwoGrowth() {
+    }
+
+
+    /**
+     * @param minimumCapacity  the least number of cells the table needs (at least 1)
+     * @return the smallest power of two that is at least minimumCapacity
+     */
+    @Override
+    public int sizeFor(int minimumCapacity) {
+        if (minimumCapacity >= MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        return Math.max(1, Integer.highestOneBit(minimumCapacity - 1) << 1);
+    }
+
+
+    /**
+     * @param capacity  the current capacity
+     * @return two times the capacity
+     */
+    @Override
+    public int grow(int capacity) {
+        return capacity * 2;
+    }
+
+
+    /**
+     * @param capacity  the current capacity
+     * @return half the capacity
+     */
+    @Override
+    public int shrink(int capacity) {
+        return capacity / 2;
+    }
+
+
+    /**
+     * @param hash  a mixed hash
+     * @param capacity  the capacity of the table (a power of two)
+     * @return the low bits of the hash
+     */
+    @Override
+    public int index(int hash, int capacity) {
+        return hash & (capacity - 1);
+    }
+
+
+    /**
+     * @return true
+     */
+    @Override
+    public boolean isPowerOfTwo() {
+        return true;
+    }
+
+
+}
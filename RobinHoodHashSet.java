@@ -0,0 +1,323 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * a hash-set based on open addressing with linear probing and Robin Hood insertion. Extends SimpleHashSet.
+ * Next to the table of strings it keeps a control array with one byte per cell: 0 for an empty cell, or a
+ * 7 bit fingerprint of the hash (with the high bit set) for a full cell. A lookup reads the control bytes of
+ * a group of 8 cells as a single long and compares all of them with the fingerprint at once, so String.equals
+ * is only called on cells whose fingerprint matches. Deleted values are removed by shifting the rest of their
+ * cluster back one cell (backward-shift deletion), so the table never holds deleted flags.
+ */
+public class RobinHoodHashSet extends SimpleHashSet {
+
+    /** number of cells whose control bytes are compared at once */
+    private static final int GROUP_WIDTH = 8;
+
+    /** the smallest capacity of the table */
+    private static final int MIN_CAPACITY = 2 * GROUP_WIDTH;
+
+    /** the control byte of an empty cell */
+    private static final byte EMPTY = 0;
+
+    /** a long with the lowest bit of each byte set */
+    private static final long LOW_BITS = 0x0101010101010101L;
+
+    /** a long with the highest bit of each byte set */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /** reads the control bytes of a group as a single (little endian) long */
+    private static final VarHandle GROUP = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    /** the control byte of each cell. The first GROUP_WIDTH - 1 bytes are repeated after the last cell, so a
+     * group that wraps around the end of the table can still be read in one go */
+    private byte[] control;
+
+    /** the strings of the table */
+    private String[] table;
+
+    /** the hash of the string in each cell */
+    private int[] hashes;
+
+    /** the current number of elements */
+    private int size = 0;
+
+
+    /**
+     * A default constructor. Constructs a new, empty table with default initial capacity (16),
+     * upper load factor (0.75) and lower load factor (0.25).
+     */
+    public RobinHoodHashSet() {
+        this(0.75f, 0.25f);
+    }
+
+
+    /**
+     * Constructs a new, empty table with the specified load factors, and the default initial capacity (16).
+     * @param upperLoadFactor  The upper load factor of the hash table (must be smaller than 1)
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     */
+    public RobinHoodHashSet(float upperLoadFactor, float lowerLoadFactor) {
+        this(upperLoadFactor, lowerLoadFactor, SpreadingHasher.INSTANCE);
+    }
+
+
+    /**
+     * Constructs a new, empty table with the specified load factors and hash-mixing stage, and the default
+     * initial capacity (16).
+     * @param upperLoadFactor  The upper load factor of the hash table (must be smaller than 1)
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     * @param hasher  The hash-mixing stage (e.g. a SipHasher for untrusted input)
+     */
+    public RobinHoodHashSet(float upperLoadFactor, float lowerLoadFactor, StringHasher hasher) {
+        super(upperLoadFactor, lowerLoadFactor, hasher);
+        if (upperLoadFactor >= 1) {
+            throw new IllegalArgumentException("the upper load factor must be smaller than 1");
+        }
+        allocate(INITIAL_CAPACITY);
+    }
+
+
+    /**
+     * Data constructor - builds the hash set by adding the elements one by one. Duplicate values should be
+     * ignored. The new table has the default values of initial capacity (16), upper load factor (0.75),
+     * and lower load factor (0.25).
+     * @param data  Values to add to the set.
+     */
+    public RobinHoodHashSet(java.lang.String[] data) {
+        this();
+        for (String s : data) {
+            this.add(s);
+        }
+    }
+
+
+    /**
+     * Add a specified element to the set if it's not already in it.
+     *
+     * @param newValue New value to add to the set
+     * @return False iff newValue already exists in the set
+     */
+    @Override
+    public boolean add(String newValue) {
+        int hash = hash(newValue);
+        if (findIndex(newValue, hash) != -1) {  // to not allow duplicates
+            return false;
+        }
+        double load = (double) (this.size + 1) / table.length;  // calculate the load
+        if (load > getUpperLoadFactor()) {
+            rehash(table.length * 2);  // rehash to a new table (two times as big)
+        }
+        insert(newValue, hash);
+        size++;
+        return true;
+    }
+
+
+    /**
+     * Look for a specified value in the set.
+     *
+     * @param searchVal Value to search for
+     * @return True iff searchVal is found in the set
+     */
+    @Override
+    public boolean contains(String searchVal) {
+        return findIndex(searchVal, hash(searchVal)) != -1;
+    }
+
+
+    /**
+     * Remove the input element from the set.
+     *
+     * @param toDelete Value to delete
+     * @return True iff toDelete is found and deleted
+     */
+    @Override
+    public boolean delete(String toDelete) {
+        int index = findIndex(toDelete, hash(toDelete));
+        if (index == -1) {
+            return false;
+        }
+        // shift the following cells of the cluster back by one, until an empty cell or a cell at its home
+        int hole = index;
+        while (true) {
+            int next = (hole + 1) & capacityMinusOne;
+            if (control[next] == EMPTY || distance(next) == 0) {
+                break;
+            }
+            setCell(hole, table[next], hashes[next]);
+            hole = next;
+        }
+        setControl(hole, EMPTY);
+        table[hole] = null;
+        size--;
+        double load = (double) size / table.length;  // calculate the load
+        if (load < getLowerLoadFactor() && table.length > MIN_CAPACITY) {
+            rehash(table.length / 2);  // rehash to a new table (two times as small)
+        }
+        return true;
+    }
+
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * The current capacity of the table.
+     * @return  The current capacity (number of cells) of the table.
+     */
+    @Override
+    public int capacity() {
+        return table.length;
+    }
+
+
+    /**
+     * Looks for a value group by group, starting from the group of its home cell, until the value or a group
+     * with an empty cell is found.
+     * @param searchVal  the value to look for
+     * @param hash  the hash of the value
+     * @return the index of the cell holding the value, or -1 if it is not in the table
+     */
+    private int findIndex(String searchVal, int hash) {
+        long pattern = (fingerprint(hash) & 0xFF) * LOW_BITS;  // the fingerprint repeated in every byte
+        int position = clamp(hash);
+        for (int probed = 0; probed < table.length; probed += GROUP_WIDTH) {
+            long group = (long) GROUP.get(control, position);
+            long matches = matchZeroBytes(group ^ pattern);
+            while (matches != 0) {  // only cells with a matching fingerprint are compared
+                int index = (position + (Long.numberOfTrailingZeros(matches) >>> 3)) & capacityMinusOne;
+                if (hashes[index] == hash && table[index].equals(searchVal)) {
+                    return index;
+                }
+                matches &= matches - 1;
+            }
+            if ((~group & HIGH_BITS) != 0) {  // an empty cell in the group ends the cluster
+                return -1;
+            }
+            position = (position + GROUP_WIDTH) & capacityMinusOne;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Puts a value that is not in the table into it with Robin Hood insertion: walking from its home cell,
+     * the value takes the cell of the first string that is closer to its own home, and that string
+     * continues the walk instead.
+     * @param value  the value to insert
+     * @param hash  the hash of the value
+     */
+    private void insert(String value, int hash) {
+        int index = clamp(hash);
+        int dist = 0;  // distance of the value from its home cell
+        while (control[index] != EMPTY) {
+            int existingDist = distance(index);
+            if (existingDist < dist) {  // the string in the cell is richer, swap it with the value
+                String displaced = table[index];
+                int displacedHash = hashes[index];
+                setCell(index, value, hash);
+                value = displaced;
+                hash = displacedHash;
+                dist = existingDist;
+            }
+            index = (index + 1) & capacityMinusOne;
+            dist++;
+        }
+        setCell(index, value, hash);
+    }
+
+
+    /**
+     * @param index  index of a full cell
+     * @return the distance of the string in the cell from its home cell
+     */
+    private int distance(int index) {
+        return (index - clamp(hashes[index])) & capacityMinusOne;
+    }
+
+
+    /**
+     * Puts a string in a cell
+     * @param index  the index of the cell
+     * @param value  the string
+     * @param hash  the hash of the string
+     */
+    private void setCell(int index, String value, int hash) {
+        table[index] = value;
+        hashes[index] = hash;
+        setControl(index, fingerprint(hash));
+    }
+
+
+    /**
+     * Sets the control byte of a cell (and its copy after the last cell)
+     * @param index  the index of the cell
+     * @param value  the new control byte
+     */
+    private void setControl(int index, byte value) {
+        control[index] = value;
+        if (index < GROUP_WIDTH - 1) {
+            control[table.length + index] = value;
+        }
+    }
+
+
+    /**
+     * @param hash  a hash
+     * @return the control byte of a cell holding a string with this hash (high bit set, never EMPTY)
+     */
+    private static byte fingerprint(int hash) {
+        return (byte) ((hash >>> 25) | 0x80);
+    }
+
+
+    /**
+     * Finds the zero bytes of a long. Bytes above a zero byte may be reported too, so every match has to be
+     * checked, but a zero byte is never missed.
+     * @param x  the long to search
+     * @return a long with the high bit of each (possibly) zero byte set
+     */
+    private static long matchZeroBytes(long x) {
+        return (x - LOW_BITS) & ~x & HIGH_BITS;
+    }
+
+
+    /**
+     * Allocates new, empty arrays of a given capacity
+     * @param newCapacity  the new capacity (a power of two)
+     */
+    private void allocate(int newCapacity) {
+        capacityMinusOne = newCapacity - 1;
+        table = new String[newCapacity];
+        hashes = new int[newCapacity];
+        control = new byte[newCapacity + GROUP_WIDTH - 1];
+    }
+
+
+    /**
+     * This method rehashes the table (copy elements to new table) bigger or smaller one depends on the load
+     * factor and current number of elements. The stored hashes are reused.
+     * @param newTableSize  the size of the new rehashed table
+     */
+    private void rehash(int newTableSize) {
+        String[] oldTable = table;
+        int[] oldHashes = hashes;
+        allocate(newTableSize);
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] != null) {
+                insert(oldTable[i], oldHashes[i]);
+            }
+        }
+    }
+
+
+}
@@ -0,0 +1,117 @@
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.StreamSupport;
+
+/**
+ * The shared part of the bulk set operations (union, retainAll, removeAll) of the hash-sets and of
+ * CollectionFacadeSet: iterating a set and probing another, in parallel when both sets are large.
+ * Only sets whose lookups don't change them are probed by several threads: OpenHashSet and ClosedHashSet
+ * (once a rehash in progress is finished; the probe statistics of a ClosedHashSet are then approximate),
+ * FrozenStringSet and MappedStringSet. Other sets change on lookups (BoundedHashSet reorders its LRU list and
+ * counts frequencies, CollectionFacadeSet builds its index lazily) or are unknown, so they are probed by
+ * the calling thread only.
+ */
+final class SetAlgebra {
+
+    /** the smallest size of both sets for which the probing is done by several threads */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+
+    /** no instances, only static methods */
+    private SetAlgebra() {
+    }
+
+
+    /**
+     * @param set  a set
+     * @return a spliterator over the strings of the set, or null if the set can't be iterated
+     */
+    static Spliterator<String> spliterator(SimpleSet set) {
+        if (set instanceof SlotTable) {
+            return new SlotSpliterator((SlotTable) set);
+        }
+        if (set instanceof CollectionFacadeSet) {
+            return ((CollectionFacadeSet) set).collection.spliterator();
+        }
+        return null;
+    }
+
+
+    /**
+     * @param set  a set
+     * @return True iff the strings of the set can be iterated
+     */
+    static boolean isIterable(SimpleSet set) {
+        return set instanceof SlotTable || set instanceof CollectionFacadeSet;
+    }
+
+
+    /**
+     * @param set  a set that can be iterated
+     * @return True iff the strings the set iterates are known to be distinct (a hash table, or a facade over a
+     * java.util.Set; a facade over a list may hold duplicates)
+     */
+    static boolean hasDistinctStrings(SimpleSet set) {
+        return set instanceof SlotTable
+                || set instanceof CollectionFacadeSet && ((CollectionFacadeSet) set).collection instanceof Set;
+    }
+
+
+    /**
+     * @param set  a set that can be iterated
+     * @return the strings of the set
+     * @throws IllegalArgumentException if the set can't be iterated
+     */
+    static String[] toArray(SimpleSet set) {
+        return select(set, null, true);
+    }
+
+
+    /**
+     * @param set  a set
+     * @return True iff the lookups of the set never change it, so several threads can probe it at once
+     * (a rehash in progress in an OpenHashSet or ClosedHashSet must be finished first)
+     */
+    private static boolean hasReadOnlyLookups(SimpleSet set) {
+        Class<?> type = set.getClass();  // not instanceof: a subclass may override contains
+        if (type == OpenHashSet.class) {
+            return !((OpenHashSet) set).isRehashing();
+        }
+        if (type == ClosedHashSet.class) {
+            return !((ClosedHashSet) set).isRehashing();
+        }
+        return type == FrozenStringSet.class || type == MappedStringSet.class;
+    }
+
+
+    /**
+     * Collects the strings of a set that are (or are not) in another set. When both sets are large and the
+     * lookups of the probed set don't change it, the source is split by ranges of its table and probed by
+     * several threads; the probed set is not modified meanwhile (a rehash in progress in it is finished
+     * first, so its lookups don't move strings).
+     * @param source  the set to iterate
+     * @param probed  the set to look the strings up in (null to collect every string of the source)
+     * @param contained  true to collect the strings that are in the probed set, false for those that are not
+     * @return the collected strings
+     * @throws IllegalArgumentException if the source can't be iterated
+     */
+    static String[] select(SimpleSet source, SimpleSet probed, boolean contained) {
+        Spliterator<String> spliterator = spliterator(source);
+        if (spliterator == null) {
+            throw new IllegalArgumentException("can't iterate the strings of " + source.getClass().getName());
+        }
+        if (probed == null) {
+            return StreamSupport.stream(spliterator, false).toArray(String[]::new);
+        }
+        if (probed instanceof SlotTable) {
+            ((SlotTable) probed).slotCount();  // finishes a rehash in progress
+        }
+        boolean parallel = source.size() >= PARALLEL_THRESHOLD && probed.size() >= PARALLEL_THRESHOLD
+                && hasReadOnlyLookups(probed);
+        return StreamSupport.stream(spliterator, parallel)
+                .filter(s -> probed.contains(s) == contained)
+                .toArray(String[]::new);
+    }
+
+
+}
@@ -0,0 +1,555 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+
+/**
+ * Writes OpenHashSet and ClosedHashSet tables to a binary snapshot file, and opens them again without
+ * rehashing: either memory-mapped, as a read-only MappedStringSet that is queryable as soon as the file is
+ * checked, or restored into a new (modifiable) OpenHashSet or ClosedHashSet with the same table.
+ * A FrozenStringSet is written the same way, and restored (by copying its arrays) without building its
+ * perfect hash again.
+ *
+ * A snapshot is a 64 byte header, an index and the strings:
+ * <pre>
+ *  0  int    magic ("SSET")            32  float  upper load factor
+ *  4  int    format version            36  float  lower load factor
+ *  8  int    layout                    40  int    capacity
+ * 12  int    hasher (spreading/sip)    44  int    size
+ * 16  long   SipHash key k0 (or seed)  48  int    number of index entries
+ * 24  long   SipHash key k1            52  int    number of string bytes
+ *                                      56  long   CRC32 of the rest of the header and of the body
+ * </pre>
+ * The index of a closed table has one entry per cell, in table order: the offset of the cell's string
+ * (or EMPTY / DELETED) followed by its hash. The index of a chained table is the start of each bucket's
+ * entries (capacity + 1 ints) followed by the offset and hash of every string, bucket by bucket. Each string
+ * is stored as its length and its UTF-8 bytes (as encoded by Utf8, which keeps unpaired surrogates, so every
+ * string is restored exactly), at an offset from the start of the strings.
+ * The index of a frozen set is the displacement of each bucket (one entry per bucket) and the fingerprint
+ * and char offset of each cell (capacity + 1 pairs of ints), followed by the packed UTF-16 chars.
+ * Only sets that use the SpreadingHasher or a SipHasher can be written, since the hash of a custom hasher
+ * can't be restored, and only sets whose tables are powers of two, since a snapshot is probed by masking.
+ */
+public final class SetSnapshot {
+
+    /** the first int of every snapshot ("SSET") */
+    static final int MAGIC = 0x53534554;
+
+    /** the version of the format, increased whenever the layout of a snapshot changes */
+    static final int VERSION = 1;
+
+    /** the size of the header */
+    static final int HEADER_SIZE = 64;
+
+    /** the position of the checksum in the header */
+    private static final int CHECKSUM_POSITION = 56;
+
+    /** the layout of an OpenHashSet table */
+    static final int CHAINED = 0;
+
+    /** the layout of a ClosedHashSet table */
+    static final int CLOSED = 1;
+
+    /** the layout of a FrozenStringSet */
+    static final int FROZEN = 2;
+
+    /** the hasher kind of a set that uses the SpreadingHasher */
+    private static final int SPREADING = 0;
+
+    /** the hasher kind of a set that uses a SipHasher */
+    private static final int SIP = 1;
+
+    /** the offset of an empty cell of a closed table */
+    static final int EMPTY = -1;
+
+    /** the offset of a deleted cell of a closed table */
+    static final int DELETED = -2;
+
+
+    /** no instances, only static methods */
+    private SetSnapshot() {
+    }
+
+
+    /**
+     * Writes a snapshot of a ClosedHashSet. The file is written next to the target and moved over it at the
+     * end, so a crash never leaves a half written snapshot under the target name.
+     * @param set  the set
+     * @param file  the snapshot file
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if the set uses a custom hasher or tables that are not powers of two, or
+     *         the snapshot would exceed 2GB
+     */
+    public static void write(ClosedHashSet set, Path file) throws IOException {
+        checkGrowthPolicy(set);
+        String[] table = set.table();
+        int[] tableHashes = set.tableHashes();
+        long dataLength = 0;
+        for (String s : table) {
+            if (s != null && s != ClosedHashSet.DELETED_FLAG) {
+                dataLength += Integer.BYTES + Utf8.encodedLength(s);
+            }
+        }
+        long indexLength = 2L * Integer.BYTES * table.length;
+        Path temp = temporaryFile(file);
+        try (FileChannel channel = openForWriting(temp)) {
+            MappedByteBuffer buffer = map(channel, indexLength, dataLength);
+            writeHeader(buffer, CLOSED, table.length, set.size(), table.length, (int) dataLength);
+            writeHasher(buffer, set);
+            int indexPosition = HEADER_SIZE;
+            int dataStart = HEADER_SIZE + (int) indexLength;
+            int offset = 0;
+            for (int i = 0; i < table.length; i++) {
+                String s = table[i];
+                if (s == null) {
+                    buffer.putInt(indexPosition, EMPTY);
+                } else if (s == ClosedHashSet.DELETED_FLAG) {
+                    buffer.putInt(indexPosition, DELETED);
+                } else {
+                    buffer.putInt(indexPosition, offset);
+                    offset += writeString(buffer, dataStart + offset, s);
+                }
+                buffer.putInt(indexPosition + Integer.BYTES, tableHashes[i]);
+                indexPosition += 2 * Integer.BYTES;
+            }
+            seal(buffer);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    /**
+     * Writes a snapshot of an OpenHashSet. The file is written next to the target and moved over it at the
+     * end, so a crash never leaves a half written snapshot under the target name.
+     * @param set  the set
+     * @param file  the snapshot file
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if the set uses a custom hasher or tables that are not powers of two, or
+     *         the snapshot would exceed 2GB
+     */
+    public static void write(OpenHashSet set, Path file) throws IOException {
+        checkGrowthPolicy(set);
+        StringNode[] table = set.table();
+        long dataLength = 0;
+        for (StringNode head : table) {
+            for (String s : bucket(head)) {
+                dataLength += Integer.BYTES + Utf8.encodedLength(s);
+            }
+        }
+        int size = set.size();
+        long indexLength = (long) Integer.BYTES * (table.length + 1) + 2L * Integer.BYTES * size;
+        Path temp = temporaryFile(file);
+        try (FileChannel channel = openForWriting(temp)) {
+            MappedByteBuffer buffer = map(channel, indexLength, dataLength);
+            writeHeader(buffer, CHAINED, table.length, size, size, (int) dataLength);
+            writeHasher(buffer, set);
+            int entriesStart = HEADER_SIZE + Integer.BYTES * (table.length + 1);
+            int dataStart = HEADER_SIZE + (int) indexLength;
+            int entry = 0;
+            int offset = 0;
+            for (int bucket = 0; bucket < table.length; bucket++) {
+                buffer.putInt(HEADER_SIZE + Integer.BYTES * bucket, entry);
+                for (String s : bucket(table[bucket])) {
+                    int entryPosition = entriesStart + 2 * Integer.BYTES * entry++;
+                    buffer.putInt(entryPosition, offset);
+                    buffer.putInt(entryPosition + Integer.BYTES, set.hash(s));
+                    offset += writeString(buffer, dataStart + offset, s);
+                }
+            }
+            buffer.putInt(HEADER_SIZE + Integer.BYTES * table.length, entry);
+            seal(buffer);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    /**
+     * Writes a snapshot of a FrozenStringSet. The file is written next to the target and moved over it at the
+     * end, so a crash never leaves a half written snapshot under the target name.
+     * @param set  the set
+     * @param file  the snapshot file
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if the snapshot would exceed 2GB
+     */
+    public static void write(FrozenStringSet set, Path file) throws IOException {
+        int[] displacements = set.displacements();
+        int[] cells = set.cells();
+        long indexLength = (long) Integer.BYTES * (displacements.length + cells.length);
+        long dataLength = (long) Character.BYTES * set.chars().length;
+        Path temp = temporaryFile(file);
+        try (FileChannel channel = openForWriting(temp)) {
+            MappedByteBuffer buffer = map(channel, indexLength, dataLength);
+            writeHeader(buffer, FROZEN, set.capacity(), set.size(), displacements.length, (int) dataLength);
+            buffer.putLong(16, set.seed());
+            buffer.position(HEADER_SIZE);
+            IntBuffer index = buffer.asIntBuffer();
+            index.put(displacements).put(cells);
+            buffer.position(HEADER_SIZE + (int) indexLength);
+            buffer.asCharBuffer().put(set.chars());
+            buffer.position(0);
+            seal(buffer);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    /**
+     * Opens a snapshot as a read-only set over the memory-mapped file. The whole file is checked against its
+     * checksum first.
+     * @param file  the snapshot file
+     * @return the mapped set
+     * @throws IOException if the file can't be read, or is not a valid snapshot of this version
+     */
+    public static MappedStringSet open(Path file) throws IOException {
+        return open(file, true);
+    }
+
+
+    /**
+     * Opens a snapshot as a read-only set over the memory-mapped file. The header is always validated; the
+     * checksum, which reads the whole file, may be skipped for a trusted file to open it in constant time.
+     * @param file  the snapshot file
+     * @param verifyChecksum  false to skip the checksum
+     * @return the mapped set
+     * @throws IOException if the file can't be read, or is not a valid snapshot of this version
+     */
+    public static MappedStringSet open(Path file, boolean verifyChecksum) throws IOException {
+        ByteBuffer buffer = mapForReading(file);
+        validate(buffer, file, verifyChecksum);
+        requireHashSet(buffer, file);
+        return new MappedStringSet(buffer, buffer.getFloat(32), buffer.getFloat(36), hasher(buffer));
+    }
+
+
+    /**
+     * Restores a snapshot into a new OpenHashSet or ClosedHashSet (the set that was written), with the same
+     * table: the strings are decoded and put in their cells or buckets without being hashed again.
+     * @param file  the snapshot file
+     * @return the restored set
+     * @throws IOException if the file can't be read, or is not a valid snapshot of this version
+     */
+    public static SimpleHashSet restore(Path file) throws IOException {
+        ByteBuffer buffer = mapForReading(file);
+        validate(buffer, file, true);
+        requireHashSet(buffer, file);
+        float upperLoadFactor = buffer.getFloat(32);
+        float lowerLoadFactor = buffer.getFloat(36);
+        int capacity = buffer.getInt(40);
+        int size = buffer.getInt(44);
+        if (buffer.getInt(8) == CLOSED) {
+            int dataStart = HEADER_SIZE + 2 * Integer.BYTES * capacity;
+            String[] table = new String[capacity];
+            int[] tableHashes = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                int offset = buffer.getInt(HEADER_SIZE + 2 * Integer.BYTES * i);
+                tableHashes[i] = buffer.getInt(HEADER_SIZE + 2 * Integer.BYTES * i + Integer.BYTES);
+                if (offset == DELETED) {
+                    table[i] = ClosedHashSet.DELETED_FLAG;
+                } else if (offset != EMPTY) {
+                    table[i] = readString(buffer, dataStart + offset);
+                }
+            }
+            return new ClosedHashSet(upperLoadFactor, lowerLoadFactor, hasher(buffer), table, tableHashes, size);
+        }
+        int entriesStart = HEADER_SIZE + Integer.BYTES * (capacity + 1);
+        int dataStart = entriesStart + 2 * Integer.BYTES * size;
+        StringNode[] table = new StringNode[capacity];
+        for (int bucket = 0; bucket < capacity; bucket++) {
+            int end = buffer.getInt(HEADER_SIZE + Integer.BYTES * (bucket + 1));
+            for (int entry = buffer.getInt(HEADER_SIZE + Integer.BYTES * bucket); entry < end; entry++) {
+                int entryPosition = entriesStart + 2 * Integer.BYTES * entry;
+                String value = readString(buffer, dataStart + buffer.getInt(entryPosition));
+                table[bucket] = new StringNode(buffer.getInt(entryPosition + Integer.BYTES), value, table[bucket]);
+            }
+        }
+        return new OpenHashSet(upperLoadFactor, lowerLoadFactor, hasher(buffer), table, size);
+    }
+
+
+    /**
+     * Restores a snapshot of a FrozenStringSet: its arrays are copied out of the file as they are, so the
+     * perfect hash is not built again.
+     * @param file  the snapshot file
+     * @return the restored set
+     * @throws IOException if the file can't be read, or is not a valid snapshot of a frozen set
+     */
+    public static FrozenStringSet restoreFrozen(Path file) throws IOException {
+        ByteBuffer buffer = mapForReading(file);
+        validate(buffer, file, true);
+        if (buffer.getInt(8) != FROZEN) {
+            throw new IOException(file + " is not a snapshot of a FrozenStringSet, use restore");
+        }
+        int capacity = buffer.getInt(40);
+        int[] displacements = new int[buffer.getInt(48)];
+        int[] cells = new int[2 * (capacity + 1)];
+        char[] chars = new char[buffer.getInt(52) / Character.BYTES];
+        IntBuffer index = buffer.position(HEADER_SIZE).asIntBuffer();
+        index.get(displacements).get(cells);
+        buffer.position(HEADER_SIZE + Integer.BYTES * (displacements.length + cells.length));
+        buffer.asCharBuffer().get(chars);
+        if (cells[1] != 0 || cells[2 * capacity + 1] != chars.length) {
+            throw new IOException(file + " is a corrupted snapshot: inconsistent offsets");
+        }
+        return new FrozenStringSet(buffer.getLong(16), buffer.getInt(44), displacements, cells, chars);
+    }
+
+
+    /**
+     * @param buffer  the mapped file
+     * @param file  the file (for the error message)
+     * @throws IOException if the file is a snapshot of a FrozenStringSet instead of a hash-set
+     */
+    private static void requireHashSet(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.getInt(8) == FROZEN) {
+            throw new IOException(file + " is a snapshot of a FrozenStringSet, use restoreFrozen");
+        }
+    }
+
+
+    /**
+     * @param head  the first node of a bucket (or null)
+     * @return the strings of the bucket, whether it is a chain or a tree bucket
+     */
+    private static Iterable<String> bucket(StringNode head) {
+        if (head instanceof TreeBucket) {
+            return ((TreeBucket) head).tree;
+        }
+        return () -> new Iterator<String>() {
+            private StringNode node = head;
+
+            @Override
+            public boolean hasNext() {
+                return node != null;
+            }
+
+            @Override
+            public String next() {
+                String value = node.value;
+                node = node.next;
+                return value;
+            }
+        };
+    }
+
+
+    /**
+     * Makes sure the tables of a set are powers of two (a snapshot is probed by masking the hash)
+     * @param set  the set to write
+     * @throws IllegalArgumentException if the set uses another growth policy
+     */
+    private static void checkGrowthPolicy(SimpleHashSet set) {
+        if (!set.getGrowthPolicy().isPowerOfTwo()) {
+            throw new IllegalArgumentException("can't write a set whose tables are not powers of two: "
+                    + set.getGrowthPolicy());
+        }
+    }
+
+
+    /**
+     * @param file  a snapshot file
+     * @return the file the snapshot is written to before it is moved over the target
+     */
+    private static Path temporaryFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+
+    /**
+     * @param file  the file to write
+     * @return a channel to the (created or truncated) file
+     * @throws IOException if the file can't be opened
+     */
+    private static FileChannel openForWriting(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+
+    /**
+     * Maps a new snapshot file to memory
+     * @param channel  the channel of the file
+     * @param indexLength  the number of bytes of the index
+     * @param dataLength  the number of bytes of the strings
+     * @return the mapped file
+     * @throws IOException if the file can't be mapped
+     */
+    private static MappedByteBuffer map(FileChannel channel, long indexLength, long dataLength)
+            throws IOException {
+        long fileLength = HEADER_SIZE + indexLength + dataLength;
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("a snapshot can't exceed 2GB, this one needs " + fileLength);
+        }
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, fileLength);
+    }
+
+
+    /**
+     * Writes the header of a snapshot (except its hasher and checksum)
+     * @param buffer  the mapped file
+     * @param layout  CHAINED, CLOSED or FROZEN
+     * @param capacity  the capacity of the table
+     * @param size  the number of strings
+     * @param entries  the number of index entries
+     * @param dataLength  the number of string bytes
+     */
+    private static void writeHeader(ByteBuffer buffer, int layout, int capacity, int size, int entries,
+                                    int dataLength) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, layout);
+        buffer.putInt(40, capacity);
+        buffer.putInt(44, size);
+        buffer.putInt(48, entries);
+        buffer.putInt(52, dataLength);
+    }
+
+
+    /**
+     * Writes the hasher and load factors of a hash-set to the header of its snapshot
+     * @param buffer  the mapped file
+     * @param set  the set
+     */
+    private static void writeHasher(ByteBuffer buffer, SimpleHashSet set) {
+        StringHasher hasher = set.getHasher();
+        if (hasher instanceof SipHasher) {
+            buffer.putInt(12, SIP);
+            buffer.putLong(16, ((SipHasher) hasher).getK0());
+            buffer.putLong(24, ((SipHasher) hasher).getK1());
+        } else if (hasher == SpreadingHasher.INSTANCE) {
+            buffer.putInt(12, SPREADING);
+        } else {
+            throw new IllegalArgumentException("can't write a set that uses a custom hasher: " + hasher);
+        }
+        buffer.putFloat(32, set.getUpperLoadFactor());
+        buffer.putFloat(36, set.getLowerLoadFactor());
+    }
+
+
+    /**
+     * Writes a string record
+     * @param buffer  the mapped file
+     * @param position  the position of the record
+     * @param s  the string
+     * @return the size of the record
+     */
+    private static int writeString(ByteBuffer buffer, int position, String s) {
+        int length = Utf8.encodedLength(s);
+        buffer.putInt(position, length);
+        Utf8.encode(s, buffer, position + Integer.BYTES);
+        return Integer.BYTES + length;
+    }
+
+
+    /**
+     * @param buffer  the mapped file
+     * @param position  the position of a string record
+     * @return the string
+     */
+    private static String readString(ByteBuffer buffer, int position) {
+        return Utf8.decode(buffer, position + Integer.BYTES, buffer.getInt(position));
+    }
+
+
+    /**
+     * Writes the checksum of a snapshot and flushes it to the disk
+     * @param buffer  the mapped file
+     */
+    private static void seal(MappedByteBuffer buffer) {
+        buffer.putLong(CHECKSUM_POSITION, checksum(buffer));
+        buffer.force();
+    }
+
+
+    /**
+     * @param buffer  the mapped file
+     * @return the CRC32 of the whole file except the checksum itself
+     */
+    private static long checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(CHECKSUM_POSITION));
+        crc.update(buffer.duplicate().position(HEADER_SIZE).limit(buffer.capacity()));
+        return crc.getValue();
+    }
+
+
+    /**
+     * Maps a snapshot file to memory, read only. The mapping stays valid after the channel is closed.
+     * @param file  the snapshot file
+     * @return the mapped file
+     * @throws IOException if the file can't be mapped
+     */
+    private static ByteBuffer mapForReading(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a snapshot: larger than 2GB");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+
+    /**
+     * Checks that a file is a snapshot of this version whose lengths are consistent, and optionally that it
+     * matches its checksum
+     * @param buffer  the mapped file
+     * @param file  the file (for the error message)
+     * @param verifyChecksum  true to compare the checksum
+     * @throws IOException if the file is not a valid snapshot
+     */
+    private static void validate(ByteBuffer buffer, Path file, boolean verifyChecksum) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " is a snapshot of version " + buffer.getInt(4) + ", expected "
+                    + VERSION);
+        }
+        int layout = buffer.getInt(8);
+        int capacity = buffer.getInt(40);
+        int size = buffer.getInt(44);
+        int entries = buffer.getInt(48);
+        long indexLength;
+        boolean consistent;
+        if (layout == FROZEN) {
+            indexLength = Integer.BYTES * (entries + 2L * capacity + 2);
+            consistent = capacity > 0 && entries > 0 && size >= 0 && size <= capacity
+                    && buffer.getInt(52) % Character.BYTES == 0;
+        } else {
+            indexLength = layout == CLOSED ? 2L * Integer.BYTES * entries
+                    : Integer.BYTES * (capacity + 1L) + 2L * Integer.BYTES * entries;
+            consistent = (layout == CLOSED || layout == CHAINED)
+                    && buffer.getInt(12) >= SPREADING && buffer.getInt(12) <= SIP
+                    && capacity > 0 && (capacity & (capacity - 1)) == 0 && size >= 0
+                    && entries == (layout == CLOSED ? capacity : size);
+        }
+        consistent = consistent && buffer.getInt(52) >= 0
+                && HEADER_SIZE + indexLength + buffer.getInt(52) == buffer.capacity();
+        if (!consistent) {
+            throw new IOException(file + " is a corrupted snapshot: inconsistent header");
+        }
+        if (verifyChecksum && buffer.getLong(CHECKSUM_POSITION) != checksum(buffer)) {
+            throw new IOException(file + " is a corrupted snapshot: checksum mismatch");
+        }
+    }
+
+
+    /**
+     * @param buffer  the mapped file
+     * @return the hasher the snapshot's set was built with
+     */
+    private static StringHasher hasher(ByteBuffer buffer) {
+        if (buffer.getInt(12) == SIP) {
+            return new SipHasher(buffer.getLong(16), buffer.getLong(24));
+        }
+        return SpreadingHasher.INSTANCE;
+    }
+
+
+}
@@ -1,3 +1,5 @@
+import java.nio.ByteBuffer;
+
 /**
  * an abstract class implementing SimpleSet
  */
@@ -6,6 +8,12 @@ public abstract class SimpleHashSet implements SimpleSet {
     /** default initial capacity */
     protected static final int INITIAL_CAPACITY = 16;
 
+    /** the number of values of a batch whose table cells are loaded together, so their cache misses overlap */
+    protected static final int BATCH_GROUP = 16;
+
+    /** the view each thread decodes byte keys into, so a lookup by bytes creates no String */
+    private static final ThreadLocal<CharSlice> KEY_VIEW = ThreadLocal.withInitial(CharSlice::new);
+
     /** the variable that holds the capacity minus one */
     protected int capacityMinusOne = INITIAL_CAPACITY - 1;
 
@@ -15,6 +23,18 @@ public abstract class SimpleHashSet implements SimpleSet {
     /** The lower load factor of the hash table. */
     private final float lowerLoadFactor;
 
+    /** The hash-mixing stage that maps a string to the hash that is clamped to a table index. */
+    private final StringHasher hasher;
+
+    /** The policy that picks the table sizes and reduces a hash to a table index. */
+    private final GrowthPolicy growthPolicy;
+
+    /** Whether the growth policy only allows powers of two (then clamp is a mask). */
+    private final boolean powerOfTwo;
+
+    /** The metrics the hot paths record into (null when the set is not instrumented). */
+    private HashSetMetrics metrics;
+
 
     /**
      * Constructs a new, empty table with the specified load factors, and the default initial capacity (16).
@@ -22,8 +42,34 @@ public abstract class SimpleHashSet implements SimpleSet {
      * @param lowerLoadFactor  The lower load factor of the hash table
      */
     protected SimpleHashSet(float upperLoadFactor, float lowerLoadFactor) {
+        this(upperLoadFactor, lowerLoadFactor, SpreadingHasher.INSTANCE);
+    }
+
+    /**
+     * Constructs a new, empty table with the specified load factors and hash-mixing stage, and the default
+     * initial capacity (16).
+     * @param upperLoadFactor  The upper load factor of the hash table.
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     * @param hasher  The hash-mixing stage (e.g. a SipHasher for untrusted input)
+     */
+    protected SimpleHashSet(float upperLoadFactor, float lowerLoadFactor, StringHasher hasher) {
+        this(upperLoadFactor, lowerLoadFactor, hasher, PowerOfTwoGrowth.INSTANCE);
+    }
+
+    /**
+     * Constructs a new, empty table with the specified load factors, hash-mixing stage and growth policy.
+     * @param upperLoadFactor  The upper load factor of the hash table.
+     * @param lowerLoadFactor  The lower load factor of the hash table
+     * @param hasher  The hash-mixing stage (e.g. a SipHasher for untrusted input)
+     * @param growthPolicy  The policy that picks the table sizes (e.g. a FastRangeGrowth for tables of any size)
+     */
+    protected SimpleHashSet(float upperLoadFactor, float lowerLoadFactor, StringHasher hasher,
+                            GrowthPolicy growthPolicy) {
         this.upperLoadFactor = upperLoadFactor;
         this.lowerLoadFactor = lowerLoadFactor;
+        this.hasher = hasher;
+        this.growthPolicy = growthPolicy;
+        this.powerOfTwo = growthPolicy.isPowerOfTwo();
     }
 
     /**
@@ -32,11 +78,226 @@ public abstract class SimpleHashSet implements SimpleSet {
      */
     public abstract int capacity();
 
+    /**
+     * Adds all the values of an array to the set, one by one. Sets that can size their table once for all
+     * the values override this.
+     * @param data  Values to add to the set
+     * @return The number of values that were added (duplicates are not)
+     */
+    public int addAll(String[] data) {
+        int added = 0;
+        for (String s : data) {
+            if (add(s)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Adds a batch of values to the set, and tells which of them were added. Sets that can overlap the cache
+     * misses of the values override this.
+     * @param data  Values to add to the set
+     * @param added  set to true at the index of each value that was added (false for a value that was in the
+     *               set, or earlier in the batch); must be at least as long as data
+     * @return The number of values that were added
+     */
+    public int addAll(String[] data, boolean[] added) {
+        checkBatch(data, added);
+        int count = 0;
+        for (int i = 0; i < data.length; i++) {
+            added[i] = add(data[i]);
+            count += added[i] ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Looks up a batch of values. Sets that can overlap the cache misses of the lookups override this.
+     * @param keys  Values to search for
+     * @param found  set to true at the index of each value that is in the set, false for the others; must be
+     *               at least as long as keys
+     * @return The number of values that were found
+     */
+    public int containsAll(String[] keys, boolean[] found) {
+        checkBatch(keys, found);
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            found[i] = contains(keys[i]);
+            count += found[i] ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Add the string of a sequence of chars to the set if it's not already in it. Sets that can look the chars
+     * up without creating the string override this, and create it only when they insert it.
+     * @param newValue  The chars of the new value
+     * @return False iff the value already exists in the set
+     */
+    public boolean add(CharSequence newValue) {
+        return add(newValue.toString());
+    }
+
+    /**
+     * Look for the string of a sequence of chars in the set. Sets that can compare the chars with their strings
+     * in place override this.
+     * @param searchVal  The chars of the value to search for
+     * @return True iff the value is found in the set
+     */
+    public boolean contains(CharSequence searchVal) {
+        return contains(searchVal.toString());
+    }
+
+    /**
+     * Remove the string of a sequence of chars from the set. Sets that can compare the chars with their strings
+     * in place override this.
+     * @param toDelete  The chars of the value to delete
+     * @return True iff the value is found and deleted
+     */
+    public boolean delete(CharSequence toDelete) {
+        return delete(toDelete.toString());
+    }
+
+    /**
+     * Add the UTF-8 decoded string of a slice of bytes to the set if it's not already in it. The bytes are
+     * decoded into a reused view and passed to add(CharSequence). Malformed sequences are replaced with U+FFFD,
+     * as by new String(bytes, UTF_8); sets that override the byte overloads must find the same string.
+     * @param bytes  An array holding the UTF-8 bytes of the value
+     * @param offset  The index of the first byte
+     * @param length  The number of bytes
+     * @return False iff the value already exists in the set
+     */
+    public boolean add(byte[] bytes, int offset, int length) {
+        return add(KEY_VIEW.get().decode(bytes, offset, length));
+    }
+
+    /**
+     * Look for the UTF-8 decoded string of a slice of bytes in the set.
+     * @param bytes  An array holding the UTF-8 bytes of the value
+     * @param offset  The index of the first byte
+     * @param length  The number of bytes
+     * @return True iff the value is found in the set
+     */
+    public boolean contains(byte[] bytes, int offset, int length) {
+        return contains(KEY_VIEW.get().decode(bytes, offset, length));
+    }
+
+    /**
+     * Remove the UTF-8 decoded string of a slice of bytes from the set.
+     * @param bytes  An array holding the UTF-8 bytes of the value
+     * @param offset  The index of the first byte
+     * @param length  The number of bytes
+     * @return True iff the value is found and deleted
+     */
+    public boolean delete(byte[] bytes, int offset, int length) {
+        return delete(KEY_VIEW.get().decode(bytes, offset, length));
+    }
+
+    /**
+     * Add the UTF-8 decoded string of bytes stored in a buffer to the set if it's not already in it.
+     * @param buffer  The buffer holding the UTF-8 bytes of the value (its position and limit are not changed)
+     * @param position  The position of the first byte in the buffer
+     * @param length  The number of bytes
+     * @return False iff the value already exists in the set
+     */
+    public boolean add(ByteBuffer buffer, int position, int length) {
+        return add(KEY_VIEW.get().decode(buffer, position, length));
+    }
+
+    /**
+     * Look for the UTF-8 decoded string of bytes stored in a buffer in the set.
+     * @param buffer  The buffer holding the UTF-8 bytes of the value (its position and limit are not changed)
+     * @param position  The position of the first byte in the buffer
+     * @param length  The number of bytes
+     * @return True iff the value is found in the set
+     */
+    public boolean contains(ByteBuffer buffer, int position, int length) {
+        return contains(KEY_VIEW.get().decode(buffer, position, length));
+    }
+
+    /**
+     * Remove the UTF-8 decoded string of bytes stored in a buffer from the set.
+     * @param buffer  The buffer holding the UTF-8 bytes of the value (its position and limit are not changed)
+     * @param position  The position of the first byte in the buffer
+     * @param length  The number of bytes
+     * @return True iff the value is found and deleted
+     */
+    public boolean delete(ByteBuffer buffer, int position, int length) {
+        return delete(KEY_VIEW.get().decode(buffer, position, length));
+    }
+
+    /**
+     * Makes sure the result array of a batch operation can hold a result for every value
+     * @param values  the values of the batch
+     * @param results  the result array
+     * @throws IllegalArgumentException if the result array is shorter than the batch
+     */
+    protected static void checkBatch(String[] values, boolean[] results) {
+        if (results.length < values.length) {
+            throw new IllegalArgumentException("a batch of " + values.length + " values needs as many results, not "
+                    + results.length);
+        }
+    }
+
+    /**
+     * The capacity a table needs to hold a number of elements without crossing the upper load factor
+     * @param expectedSize  the number of elements
+     * @return the smallest capacity the growth policy allows (and at least the initial capacity) that holds them
+     */
+    protected int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(expectedSize / (double) getUpperLoadFactor());
+        return growthPolicy.sizeFor((int) Math.min(1 << 30, Math.max(INITIAL_CAPACITY, needed)));
+    }
+
+    /**
+     * The capacity to rehash to after a delete. The table shrinks once its load is below the lower load factor,
+     * but only if the smaller table would be loaded at most halfway between the two load factors: otherwise
+     * a few adds right after the shrink would grow it back, and a set whose size moves up and down around the
+     * lower load factor would rehash on every other operation.
+     * @param size  the number of elements after the delete
+     * @param capacity  the current capacity
+     * @param minCapacity  the smallest capacity the table may shrink to
+     * @return the capacity to shrink to, or capacity to keep the table as it is
+     */
+    protected int capacityAfterDelete(int size, int capacity, int minCapacity) {
+        if (size >= getLowerLoadFactor() * capacity) {
+            return capacity;
+        }
+        int smaller = growthPolicy.shrink(capacity);
+        if (smaller < minCapacity || size > (getUpperLoadFactor() + getLowerLoadFactor()) / 2 * smaller) {
+            return capacity;
+        }
+        return smaller;
+    }
+
+    /**
+     * the mixed hash of a value (clamp it to get the index of the value in the table)
+     */
+    protected int hash(String value) {
+        return hasher.hash(value);
+    }
+
+    /**
+     * the mixed hash of a sequence of chars, the same as the hash of their string
+     */
+    protected int hash(CharSequence value) {
+        return hasher.hash(value);
+    }
+
     /**
      * clamp an expression to the valid range of table indices
      */
     protected int clamp(int index) {
-        return index & capacityMinusOne;
+        return powerOfTwo ? index & capacityMinusOne : growthPolicy.index(index, capacityMinusOne + 1);
+    }
+
+    /**
+     * clamp a hash to the valid range of indices of a table of any size the growth policy allows (e.g. the old
+     * table of a rehash)
+     */
+    protected int clamp(int hash, int capacity) {
+        return powerOfTwo ? hash & (capacity - 1) : growthPolicy.index(hash, capacity);
     }
 
     /**
@@ -53,5 +314,37 @@ public abstract class SimpleHashSet implements SimpleSet {
         return lowerLoadFactor;
     }
 
+    /**
+     * Turns instrumentation on (or off, with null). The metrics should belong to this set only.
+     * @param metrics  The metrics to record into, or null to record nothing
+     */
+    public void setMetrics(HashSetMetrics metrics) {
+        if (metrics != null) {
+            metrics.bind(this);
+        }
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return  The metrics the set records into, or null if it is not instrumented
+     */
+    public HashSetMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return  The growth policy of the hash table
+     */
+    public GrowthPolicy getGrowthPolicy() {
+        return growthPolicy;
+    }
+
+    /**
+     * @return  The hash-mixing stage of the hash table
+     */
+    public StringHasher getHasher() {
+        return hasher;
+    }
+
 
 }
@@ -0,0 +1,536 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * A benchmark suite for every SimpleSet implementation. Unlike SimpleSetPerformanceAnalyzer (which measures the
+ * run-times requested in the "Performance Analysis" section), every measurement here is repeated: a number of
+ * warm-up iterations are thrown away, and the mean and standard deviation of the measured iterations are
+ * reported per operation, together with the bytes allocated by the measured operations and the GC runs. The
+ * result of every operation is consumed, so the JIT cannot remove the measured loops as dead code.
+ *
+ * Usage: java SimpleSetBenchmark [workload=...] [set=...] [keys=...] [size=...] [loadFactor=...] [batch=...]
+ * where each filter is a comma separated list, e.g. "set=OpenHashSet,ClosedHashSet size=100000".
+ * The containsBatch workload is measured once per batch size, and reported as e.g. "containsBatch/16".
+ */
+public class SimpleSetBenchmark {
+
+    /** number of iterations run before measuring */
+    private static final int WARMUP_ITERATIONS = 3;
+
+    /** number of measured iterations */
+    private static final int MEASUREMENT_ITERATIONS = 5;
+
+    /** the number of keys in a set */
+    private static final int[] SIZES = {1000, 100000};
+
+    /** the upper load factors the hash-sets are measured with */
+    private static final float[] LOAD_FACTORS = {0.5f, 0.75f, 0.9f};
+
+    /** the number of keys per containsAll call of the containsBatch workload */
+    private static final int[] BATCH_SIZES = {1, 16, 256};
+
+    /** the largest set a LinkedList facade is measured with (its operations take linear time) */
+    private static final int MAX_LINKED_LIST_SIZE = 10000;
+
+    /** the measured workloads */
+    private static final String[] WORKLOADS = {"add", "containsHit", "containsMiss", "containsBatch",
+            "containsBytes", "delete", "build", "mixed"};
+
+    /** the measured sets */
+    private static final String[] SETS = {"OpenHashSet", "ClosedHashSet", "RobinHoodHashSet",
+            "ConcurrentHashSet", "OffHeapStringSet", "NumericStringSet", "BloomFilterSet", "FrozenStringSet",
+            "StringBTreeSet", "TreeSet", "LinkedList", "IndexedLinkedList", "HashSet"};
+
+    /** the key distributions: the two data files and three synthetic ones */
+    private static final String[] KEYS = {"data1", "data2", "sequential", "random", "colliding"};
+
+    /** consumes the result of every operation, so the measured loops are never dead code */
+    private static volatile long sink;
+
+    /** the time the current measured section started */
+    private static long startTime;
+
+    /** the bytes allocated by this thread when the current measured section started */
+    private static long startAllocated;
+
+    /** the bytes allocated by the last measured section (-1 if the JVM can't tell) */
+    private static long measuredAllocated;
+
+
+    /**
+     * Runs every combination of workload, set, key distribution, size and load factor that passes the
+     * filters given as arguments, and prints a line per combination.
+     * @param args  filters of the form name=value1,value2
+     */
+    public static void main(String[] args) {
+        String[] workloads = filter(args, "workload", WORKLOADS);
+        String[] sets = filter(args, "set", SETS);
+        String[] keyNames = filter(args, "keys", KEYS);
+        String[] sizes = filter(args, "size", toStrings(SIZES));
+        String[] loadFactors = filter(args, "loadFactor", toStrings(LOAD_FACTORS));
+        String[] batchSizes = filter(args, "batch", toStrings(BATCH_SIZES));
+        System.out.printf("%-18s %-18s %-11s %7s %5s %12s %10s %10s %4s%n", "workload", "set", "keys", "size",
+                "load", "ns/op", "+-", "bytes/op", "gcs");
+        for (String keyName : keyNames) {
+            for (String size : sizes) {
+                String[] keys = keys(keyName, Integer.parseInt(size));
+                if (keys == null) {
+                    continue;  // the data file is smaller than the size
+                }
+                String[] misses = misses(keys);
+                for (String workload : workloads) {
+                    for (String set : sets) {
+                        if (set.endsWith("LinkedList") && keys.length > MAX_LINKED_LIST_SIZE) {
+                            continue;
+                        }
+                        if (set.equals("FrozenStringSet") && !workload.equals("build")
+                                && !workload.startsWith("contains")) {
+                            continue;  // a frozen set is read-only
+                        }
+                        // the load factor only matters to the hash-sets
+                        String[] setLoadFactors = isHashSet(set) ? loadFactors : new String[]{"-"};
+                        for (String loadFactor : setLoadFactors) {
+                            if (workload.equals("containsBatch")) {
+                                for (String batchSize : batchSizes) {
+                                    run(workload + "/" + batchSize, set, keyName, keys, misses, loadFactor);
+                                }
+                            } else {
+                                run(workload, set, keyName, keys, misses, loadFactor);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Warms up and measures one combination, and prints its results
+     * @param workload  the workload to run
+     * @param set  the set to run it on
+     * @param keyName  the name of the key distribution
+     * @param keys  the keys
+     * @param misses  keys that are not in keys
+     * @param loadFactor  the upper load factor of a hash-set ("-" for other sets)
+     */
+    private static void run(String workload, String set, String keyName, String[] keys, String[] misses,
+                            String loadFactor) {
+        float upperLoadFactor = loadFactor.equals("-") ? 0 : Float.parseFloat(loadFactor);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            measure(workload, set, upperLoadFactor, keys, misses);
+        }
+        double[] nanosPerOperation = new double[MEASUREMENT_ITERATIONS];
+        long allocated = 0;
+        long gcsBefore = gcCount();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            nanosPerOperation[i] = (double) measure(workload, set, upperLoadFactor, keys, misses) / keys.length;
+            allocated = (allocated < 0 || measuredAllocated < 0) ? -1 : allocated + measuredAllocated;
+        }
+        long gcs = gcCount() - gcsBefore;
+        double mean = Arrays.stream(nanosPerOperation).average().orElse(0);
+        double variance = Arrays.stream(nanosPerOperation).map(x -> (x - mean) * (x - mean)).sum() /
+                Math.max(1, MEASUREMENT_ITERATIONS - 1);
+        double bytesPerOperation = allocated < 0 ? -1 :
+                (double) allocated / MEASUREMENT_ITERATIONS / keys.length;
+        System.out.printf("%-18s %-18s %-11s %7d %5s %12.1f %10.1f %10.1f %4d%n", workload, set, keyName,
+                keys.length, loadFactor, mean, Math.sqrt(variance), bytesPerOperation, gcs);
+    }
+
+
+    /**
+     * Runs one iteration of a workload (keys.length operations)
+     * @param workload  the workload to run
+     * @param set  the set to run it on
+     * @param upperLoadFactor  the upper load factor of a hash-set
+     * @param keys  the keys
+     * @param misses  keys that are not in keys
+     * @return the time the measured operations took, in ns
+     */
+    private static long measure(String workload, String set, float upperLoadFactor, String[] keys,
+                                String[] misses) {
+        long result = 0;
+        SimpleSet simpleSet = newSet(set, upperLoadFactor);
+        int batchSize = 0;
+        if (workload.startsWith("containsBatch/")) {
+            batchSize = Integer.parseInt(workload.substring("containsBatch/".length()));
+            workload = "containsBatch";
+        }
+        switch (workload) {
+            case "add":  // add each key to a growing set
+                startMeasuring();
+                for (String key : keys) {
+                    result += simpleSet.add(key) ? 1 : 0;
+                }
+                break;
+            case "build":  // build a set from all the keys and return its size
+                startMeasuring();
+                simpleSet = build(set, upperLoadFactor, keys);
+                result += simpleSet.size();
+                break;
+            case "containsHit":
+            case "containsMiss":
+                if (set.equals("FrozenStringSet")) {
+                    simpleSet = build(set, upperLoadFactor, keys);  // a frozen set can only be built at once
+                } else {
+                    fill(simpleSet, keys);
+                }
+                String[] queries = workload.equals("containsHit") ? keys : misses;
+                startMeasuring();
+                for (String query : queries) {
+                    result += simpleSet.contains(query) ? 1 : 0;
+                }
+                break;
+            case "containsBatch":  // look up batches of keys (alternately hits and misses) with containsAll
+                if (set.equals("FrozenStringSet")) {
+                    simpleSet = build(set, upperLoadFactor, keys);
+                } else {
+                    fill(simpleSet, keys);
+                }
+                String[][] batches = batches(keys, misses, batchSize);
+                boolean[] found = new boolean[batchSize];
+                startMeasuring();
+                for (String[] batch : batches) {
+                    result += containsAll(simpleSet, batch, found);
+                }
+                break;
+            case "containsBytes":  // look up every key by its UTF-8 bytes (the hash-sets decode them in place)
+                if (set.equals("FrozenStringSet")) {
+                    simpleSet = build(set, upperLoadFactor, keys);
+                } else {
+                    fill(simpleSet, keys);
+                }
+                byte[][] encoded = new byte[keys.length][];
+                for (int i = 0; i < keys.length; i++) {
+                    encoded[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+                }
+                startMeasuring();
+                for (byte[] bytes : encoded) {
+                    result += containsBytes(simpleSet, bytes) ? 1 : 0;
+                }
+                break;
+            case "delete":  // delete every key from a full set
+                fill(simpleSet, keys);
+                startMeasuring();
+                for (String key : keys) {
+                    result += simpleSet.delete(key) ? 1 : 0;
+                }
+                break;
+            case "mixed":  // 80% contains (half of them misses), 10% add and 10% delete on a full set
+                fill(simpleSet, keys);
+                startMeasuring();
+                for (int i = 0; i < keys.length; i++) {
+                    int kind = i % 10;
+                    if (kind < 4) {
+                        result += simpleSet.contains(keys[i]) ? 1 : 0;
+                    } else if (kind < 8) {
+                        result += simpleSet.contains(misses[i]) ? 1 : 0;
+                    } else if (kind == 8) {
+                        result += simpleSet.add(misses[i]) ? 1 : 0;
+                    } else {
+                        result += simpleSet.delete(misses[i - 1]) ? 1 : 0;
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown workload " + workload);
+        }
+        long time = stopMeasuring();
+        sink += result;
+        return time;
+    }
+
+
+    /** starts the measured section of an iteration */
+    private static void startMeasuring() {
+        startAllocated = allocatedBytes();
+        startTime = System.nanoTime();
+    }
+
+
+    /**
+     * ends the measured section of an iteration
+     * @return the time the measured section took, in ns
+     */
+    private static long stopMeasuring() {
+        long time = System.nanoTime() - startTime;
+        long allocated = allocatedBytes();
+        measuredAllocated = (allocated < 0 || startAllocated < 0) ? -1 : allocated - startAllocated;
+        return time;
+    }
+
+
+    /**
+     * Creates a new, empty set
+     * @param set  the name of the set
+     * @param upperLoadFactor  the upper load factor of a hash-set (the lower one is a third of it)
+     * @return the new set
+     */
+    private static SimpleSet newSet(String set, float upperLoadFactor) {
+        float lowerLoadFactor = upperLoadFactor / 3;
+        switch (set) {
+            case "OpenHashSet":
+                return new OpenHashSet(upperLoadFactor, lowerLoadFactor);
+            case "ClosedHashSet":
+                return new ClosedHashSet(upperLoadFactor, lowerLoadFactor);
+            case "RobinHoodHashSet":
+                return new RobinHoodHashSet(upperLoadFactor, lowerLoadFactor);
+            case "ConcurrentHashSet":
+                return new ConcurrentHashSet(upperLoadFactor, lowerLoadFactor);
+            case "OffHeapStringSet":
+                return new OffHeapStringSet(upperLoadFactor, lowerLoadFactor);
+            case "NumericStringSet":
+                return new NumericStringSet(upperLoadFactor, lowerLoadFactor);
+            case "BloomFilterSet":
+                return new BloomFilterSet(new OpenHashSet(upperLoadFactor, lowerLoadFactor));
+            case "FrozenStringSet":
+                return new FrozenStringSet(new String[0]);  // read-only, see build
+            case "StringBTreeSet":
+                return new StringBTreeSet();
+            case "TreeSet":
+                return new CollectionFacadeSet(new TreeSet<String>());
+            case "LinkedList":
+                return new CollectionFacadeSet(new LinkedList<String>(), false);
+            case "IndexedLinkedList":  // a list whose facade keeps a side index
+                return new CollectionFacadeSet(new LinkedList<String>());
+            case "HashSet":
+                return new CollectionFacadeSet(new HashSet<String>());
+            default:
+                throw new IllegalArgumentException("unknown set " + set);
+        }
+    }
+
+
+    /**
+     * Builds a set from all the keys at once (the way a set is built from a data file), with addAll for the
+     * hash-sets
+     * @param set  the name of the set
+     * @param upperLoadFactor  the upper load factor of a hash-set
+     * @param keys  the keys
+     * @return the new set
+     */
+    private static SimpleSet build(String set, float upperLoadFactor, String[] keys) {
+        if (set.equals("FrozenStringSet")) {
+            return new FrozenStringSet(keys);
+        }
+        if (set.equals("StringBTreeSet")) {
+            return new StringBTreeSet(keys);  // sorted once and built bottom-up
+        }
+        SimpleSet simpleSet = newSet(set, upperLoadFactor);
+        if (simpleSet instanceof SimpleHashSet) {
+            ((SimpleHashSet) simpleSet).addAll(keys);  // sized once for all the keys
+        } else {
+            fill(simpleSet, keys);
+        }
+        return simpleSet;
+    }
+
+
+    /**
+     * Splits the keys into batches, taking each key from the hits or from the misses in turn
+     * @param keys  the keys
+     * @param misses  keys that are not in keys
+     * @param batchSize  the number of keys of a batch
+     * @return the batches (the last one may be shorter)
+     */
+    private static String[][] batches(String[] keys, String[] misses, int batchSize) {
+        String[][] batches = new String[(keys.length + batchSize - 1) / batchSize][];
+        for (int b = 0; b < batches.length; b++) {
+            batches[b] = new String[Math.min(batchSize, keys.length - b * batchSize)];
+            for (int j = 0; j < batches[b].length; j++) {
+                int i = b * batchSize + j;
+                batches[b][j] = i % 2 == 0 ? keys[i] : misses[i];
+            }
+        }
+        return batches;
+    }
+
+
+    /**
+     * Looks up a batch of keys, with the batch API of the hash-sets or one by one in the other sets
+     * @param simpleSet  the set
+     * @param batch  the keys
+     * @param found  the result of each lookup
+     * @return the number of keys found
+     */
+    private static int containsAll(SimpleSet simpleSet, String[] batch, boolean[] found) {
+        if (simpleSet instanceof SimpleHashSet) {
+            return ((SimpleHashSet) simpleSet).containsAll(batch, found);
+        }
+        int count = 0;
+        for (String key : batch) {
+            count += simpleSet.contains(key) ? 1 : 0;
+        }
+        return count;
+    }
+
+
+    /**
+     * Looks up a key by its UTF-8 bytes, in place in the hash-sets or through a new String in the other sets
+     * @param simpleSet  the set
+     * @param bytes  the UTF-8 bytes of the key
+     * @return true iff the key is in the set
+     */
+    private static boolean containsBytes(SimpleSet simpleSet, byte[] bytes) {
+        if (simpleSet instanceof SimpleHashSet) {
+            return ((SimpleHashSet) simpleSet).contains(bytes, 0, bytes.length);
+        }
+        return simpleSet.contains(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Adds all the keys to a set
+     * @param simpleSet  the set
+     * @param keys  the keys
+     */
+    private static void fill(SimpleSet simpleSet, String[] keys) {
+        for (String key : keys) {
+            simpleSet.add(key);
+        }
+    }
+
+
+    /**
+     * @param set  the name of a set
+     * @return true if the set is one of the hash-sets of this project (so it has load factors)
+     */
+    private static boolean isHashSet(String set) {
+        return set.endsWith("HashSet") && !set.equals("HashSet")
+                || set.endsWith("StringSet") && !set.equals("FrozenStringSet") && !set.equals("StringBTreeSet")
+                || set.equals("BloomFilterSet");
+    }
+
+
+    /**
+     * Creates the keys of a distribution
+     * @param keyName  the name of the distribution
+     * @param size  the number of keys
+     * @return the keys, or null if the data file has less keys
+     */
+    private static String[] keys(String keyName, int size) {
+        String[] keys = new String[size];
+        Random random = new Random(size);
+        switch (keyName) {
+            case "data1":
+            case "data2":
+                String[] data = Ex3Utils.file2array("data/" + keyName + ".txt");
+                return data == null || data.length < size ? null : Arrays.copyOf(data, size);
+            case "sequential":  // "0", "1", "2", ...
+                for (int i = 0; i < size; i++) {
+                    keys[i] = Integer.toString(i);
+                }
+                return keys;
+            case "random":  // random strings of 8 to 16 letters
+                for (int i = 0; i < size; i++) {
+                    char[] chars = new char[8 + random.nextInt(9)];
+                    for (int j = 0; j < chars.length; j++) {
+                        chars[j] = (char) ('a' + random.nextInt(26));
+                    }
+                    keys[i] = new String(chars);
+                }
+                return keys;
+            case "colliding":  // "Aa" and "BB" have the same hashCode, so groups of 256 keys collide
+                for (int i = 0; i < size; i++) {
+                    StringBuilder key = new StringBuilder();
+                    for (int bit = 0; bit < 8; bit++) {
+                        key.append((i >> bit & 1) == 0 ? "Aa" : "BB");
+                    }
+                    keys[i] = key.append(i >> 8).toString();
+                }
+                return keys;
+            default:
+                throw new IllegalArgumentException("unknown keys " + keyName);
+        }
+    }
+
+
+    /**
+     * @param keys  keys
+     * @return one key per key that is not in the keys (the key with a suffix no key has)
+     */
+    private static String[] misses(String[] keys) {
+        String[] misses = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            misses[i] = keys[i] + "#";
+        }
+        return misses;
+    }
+
+
+    /**
+     * @param args  the arguments of main
+     * @param name  the name of a filter
+     * @param all  the values to use if there is no such filter
+     * @return the values of the filter
+     */
+    private static String[] filter(String[] args, String name, String[] all) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(name.length() + 1).split(",");
+            }
+        }
+        return all;
+    }
+
+
+    /**
+     * @param values  numbers
+     * @return the numbers as strings
+     */
+    private static String[] toStrings(int[] values) {
+        List<String> strings = new ArrayList<>();
+        for (int value : values) {
+            strings.add(Integer.toString(value));
+        }
+        return strings.toArray(new String[0]);
+    }
+
+
+    /**
+     * @param values  numbers
+     * @return the numbers as strings
+     */
+    private static String[] toStrings(float[] values) {
+        List<String> strings = new ArrayList<>();
+        for (float value : values) {
+            strings.add(Float.toString(value));
+        }
+        return strings.toArray(new String[0]);
+    }
+
+
+    /**
+     * @return the number of bytes allocated by this thread so far (or -1 if the JVM can't tell)
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+
+    /**
+     * @return the number of garbage collections so far
+     */
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+
+}
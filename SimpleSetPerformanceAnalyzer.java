@@ -1,6 +1,12 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Random;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * This class has a main method that measures the run-times requested in the “Performance Analysis” section.
@@ -15,11 +21,28 @@ public class SimpleSetPerformanceAnalyzer {
     private static String[] DATA2 = Ex3Utils.file2array
             ("data/data2.txt");
 
-    /** An array that holds the five data structures*/
-    private static SimpleSet[] structuresArr = new SimpleSet[5];
-    /** An array that holds the five data structures NAMES*/
+    /** Consumes the results of the measured contains calls */
+    private static volatile long sink;
+
+    /** Number of operations each thread performs in the concurrent throughput test*/
+    private static final int CONCURRENT_OPERATIONS_PER_THREAD = 2000000;
+
+    /** Number of threads of the concurrent resize test (more than one even on a single core)*/
+    private static final int CONCURRENT_RESIZE_THREADS = 8;
+
+    /** Number of times the concurrent resize test fills a new set*/
+    private static final int CONCURRENT_RESIZE_ROUNDS = 50;
+
+    /** Strings with unpaired surrogates, and the strings a lossy UTF-8 encoding would confuse them with*/
+    private static final String[] SURROGATE_KEYS = {"\uD800", "?", "\uDC00", "\uD800x", "?x", "\uDC00\uD800",
+            "\uD800\uDC00", "??", "\uFFFD", "x\uDBFF"};
+
+    /** An array that holds the ten data structures*/
+    private static SimpleSet[] structuresArr = new SimpleSet[10];
+    /** An array that holds the ten data structures NAMES*/
     private static String[] dataStructuresNames = new String[]{"OpenHashSet", "ClosedHashSet", "TreeSet",
-            "LinkedList", "HashSet"};
+            "LinkedList", "HashSet", "RobinHoodHashSet", "OffHeapStringSet",
+            "NumericStringSet", "BloomFilterSet(OpenHashSet)", "StringBTreeSet"};
 
 
     /**
@@ -28,9 +51,16 @@ public class SimpleSetPerformanceAnalyzer {
     private static void arrayOfDataStructures() {
         structuresArr[0] = new OpenHashSet();
         structuresArr[1] = new ClosedHashSet();
+        ((SimpleHashSet) structuresArr[0]).setMetrics(new HashSetMetrics("OpenHashSet"));
+        ((SimpleHashSet) structuresArr[1]).setMetrics(new HashSetMetrics("ClosedHashSet"));
         structuresArr[2] = new CollectionFacadeSet(new TreeSet<String>());
-        structuresArr[3] = new CollectionFacadeSet(new LinkedList<String>());
+        structuresArr[3] = new CollectionFacadeSet(new LinkedList<String>(), false);  // the list itself
         structuresArr[4] = new CollectionFacadeSet(new HashSet<String>());
+        structuresArr[5] = new RobinHoodHashSet();
+        structuresArr[6] = new OffHeapStringSet();
+        structuresArr[7] = new NumericStringSet();
+        structuresArr[8] = new BloomFilterSet(new OpenHashSet());
+        structuresArr[9] = new StringBTreeSet();
     }
 
 
@@ -57,6 +87,24 @@ public class SimpleSetPerformanceAnalyzer {
         System.out.println("Starting Test 6.........");
         testContains(DATA2, "Data2.txt", "hi");
 
+        System.out.println("Starting Test 7.........");
+        testMaxAddLatency(DATA2, "Data2.txt");
+
+        System.out.println("Starting Test 8.........");
+        testConcurrentThroughput(DATA2, "Data2.txt");
+
+        System.out.println("Starting Test 9.........");
+        testStreamingLoad("data/data1.txt", "Data1.txt");
+
+        System.out.println("Starting Test 10.........");
+        testConcurrentResize(DATA2, "Data2.txt");
+
+        System.out.println("Starting Test 11.........");
+        testSurrogateKeys();
+
+        System.out.println("Starting Test 12.........");
+        testRetainAllWithDuplicates();
+
     }
 
 
@@ -70,7 +118,7 @@ public class SimpleSetPerformanceAnalyzer {
     private static void testContains(java.lang.String[] data,String dataName, String contains){
         arrayOfDataStructures();
         long result;
-        for (int i = 0; i < 5; i++) { // for each data structure
+        for (int i = 0; i < structuresArr.length; i++) { // for each data structure
             buildData(data, structuresArr[i]);
             if (i == 3) { //linked list (7000 iterations + NO warm up)
                 result = analyzeData(structuresArr[i], contains, 7000, false);
@@ -79,6 +127,7 @@ public class SimpleSetPerformanceAnalyzer {
             }
             System.out.println(dataStructuresNames[i] + " Contains " + "'" + contains + "'" + " In " + dataName
              + ": " + result + "ns.    ");
+            printProbeStatistics(structuresArr[i]);
         }
         System.out.println("");
     }
@@ -94,16 +143,19 @@ public class SimpleSetPerformanceAnalyzer {
      * @return a long number how much time the process took in average
      */
     private static long analyzeData(SimpleSet dataStructure, String contains, int iterations, boolean warmUp) {
+        int found = 0;  // the results are counted, so the JIT can't drop the contains calls as dead code
         if (warmUp) { // performs a warm up for each data structure unless it's Linked list
             for (int i = 0; i < iterations; i++) {
-                dataStructure.contains(contains);
+                found += dataStructure.contains(contains) ? 1 : 0;
             }
         }
         long timeBeforeContains = System.nanoTime();
         for (int i = 0; i < iterations; i++) {
-            dataStructure.contains(contains);
+            found += dataStructure.contains(contains) ? 1 : 0;
         }
-        return (System.nanoTime() - timeBeforeContains)/iterations; // divided by num of iterations to get avg
+        long time = (System.nanoTime() - timeBeforeContains)/iterations; // divided by num of iterations to get avg
+        sink += found;
+        return time;
     }
 
 
@@ -114,17 +166,402 @@ public class SimpleSetPerformanceAnalyzer {
      */
     private static void testBuildData(java.lang.String[] data, String dataName){
         arrayOfDataStructures();
-        for (int i = 0; i < 5; i++) { //for each data structure
+        for (int i = 0; i < structuresArr.length; i++) { //for each data structure
             long timeBeforeAdd = System.nanoTime();
             buildData(data, structuresArr[i]);  // add data to the data structure
             long differenceAdd = System.nanoTime() - timeBeforeAdd;
             System.out.println("initialized " + dataStructuresNames[i] + " with " + dataName + ". Time: " +
                     differenceAdd / 1000000 + "ms.   ");
+            printProbeStatistics(structuresArr[i]);
+        }
+        System.out.println("");
+    }
+
+
+    /**
+     * Measures the slowest single add while building the hash-sets with and without incremental rehashing
+     * @param data  the data we want to add
+     * @param dataName  the string representation of the data we want to add
+     */
+    private static void testMaxAddLatency(java.lang.String[] data, String dataName) {
+        for (boolean incremental : new boolean[]{false, true}) {
+            OpenHashSet openHashSet = new OpenHashSet();
+            ClosedHashSet closedHashSet = new ClosedHashSet();
+            openHashSet.setIncrementalRehash(incremental);
+            closedHashSet.setIncrementalRehash(incremental);
+            String mode = incremental ? " (incremental rehash)" : "";
+            System.out.println("OpenHashSet" + mode + " slowest add with " + dataName + ": " +
+                    maxAddLatency(data, openHashSet) + "ns.    ");
+            System.out.println("ClosedHashSet" + mode + " slowest add with " + dataName + ": " +
+                    maxAddLatency(data, closedHashSet) + "ns.    ");
+        }
+        System.out.println("");
+    }
+
+
+    /**
+     * A helper method to testMaxAddLatency that adds a given data to a given data structure one by one
+     * @param data  the data we want to add
+     * @param dataStructure  the data structure we want to initialize with the given data
+     * @return the time the slowest add took
+     */
+    private static long maxAddLatency(java.lang.String[] data, SimpleSet dataStructure) {
+        long max = 0;
+        for (String s : data) {
+            long timeBeforeAdd = System.nanoTime();
+            dataStructure.add(s);
+            max = Math.max(max, System.nanoTime() - timeBeforeAdd);
+        }
+        return max;
+    }
+
+
+    /**
+     * Measures the throughput of a ConcurrentHashSet shared by 1 to N threads (N is the number of cores). The
+     * set holds the first half of the data; each thread looks up random values of the data (hits and misses),
+     * and adds and then deletes a value of the second half every 16 operations.
+     * @param data  the data we want to use
+     * @param dataName  the string representation of the data we want to use
+     */
+    private static void testConcurrentThroughput(java.lang.String[] data, String dataName) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double singleThreadThroughput = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {  // 1, 2, 4, ..., cores
+            ConcurrentHashSet set = new ConcurrentHashSet();
+            buildData(Arrays.copyOf(data, data.length / 2), set);
+            long operations = (long) threads * CONCURRENT_OPERATIONS_PER_THREAD;
+            long time = runConcurrently(set, data, threads);
+            double throughput = (double) operations * 1000000 / time;  // operations per ms
+            if (threads == 1) {
+                singleThreadThroughput = throughput;
+            }
+            System.out.printf("ConcurrentHashSet with %d threads on %s: %.0f ops/ms (x%.2f)%n", threads,
+                    dataName, throughput, throughput / singleThreadThroughput);
+            if (threads == cores) {
+                break;
+            }
+        }
+        System.out.println("");
+    }
+
+
+    /**
+     * A helper method to testConcurrentThroughput that runs the operations of the given number of threads
+     * @param set  the set shared by the threads
+     * @param data  the data we want to use
+     * @param threads  number of threads
+     * @return the time it took all the threads to finish, in ns
+     */
+    private static long runConcurrently(ConcurrentHashSet set, java.lang.String[] data, int threads) {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                int half = data.length / 2;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < CONCURRENT_OPERATIONS_PER_THREAD; i++) {
+                    if (i % 16 == 0) {
+                        String value = data[half + random.nextInt(data.length - half)];
+                        set.add(value);
+                        set.delete(value);
+                    } else {
+                        set.contains(data[random.nextInt(data.length)]);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        long timeBefore = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return System.nanoTime() - timeBefore;
+    }
+
+
+    /**
+     * Checks that a ConcurrentHashSet filled by several threads at once holds exactly the data. Each round
+     * starts from an empty set, so the table is doubled many times while the threads add; each thread adds
+     * a slice of the data, then deletes and adds back every other value of its slice. Runs more threads than
+     * cores, so the resizes also interleave on a single core.
+     * @param data  the data we want to add
+     * @param dataName  the string representation of the data we want to add
+     * @throws IllegalStateException if a round ends with a value missing or a wrong size
+     */
+    private static void testConcurrentResize(java.lang.String[] data, String dataName) {
+        HashSet<String> expected = new HashSet<String>(Arrays.asList(data));
+        for (int round = 0; round < CONCURRENT_RESIZE_ROUNDS; round++) {
+            ConcurrentHashSet set = new ConcurrentHashSet();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] workers = new Thread[CONCURRENT_RESIZE_THREADS];
+            for (int t = 0; t < workers.length; t++) {
+                final int from = (int) ((long) data.length * t / workers.length);
+                final int to = (int) ((long) data.length * (t + 1) / workers.length);
+                workers[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = from; i < to; i++) {
+                        set.add(data[i]);
+                    }
+                    for (int i = from; i < to; i += 2) {
+                        set.delete(data[i]);
+                        set.add(data[i]);
+                    }
+                });
+                workers[t].start();
+            }
+            start.countDown();
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (String s : expected) {
+                if (!set.contains(s)) {
+                    throw new IllegalStateException("ConcurrentHashSet lost '" + s + "' in round " + round);
+                }
+            }
+            if (set.size() != expected.size()) {
+                throw new IllegalStateException("ConcurrentHashSet has " + set.size() + " values instead of " +
+                        expected.size() + " in round " + round);
+            }
         }
+        System.out.println("ConcurrentHashSet filled by " + CONCURRENT_RESIZE_THREADS + " threads with " +
+                dataName + " " + CONCURRENT_RESIZE_ROUNDS + " times: all values found.    ");
         System.out.println("");
     }
 
 
+    /**
+     * Checks that the sets that store strings as UTF-8 bytes tell strings with unpaired surrogates apart from
+     * the other strings, like a HashSet does, and that snapshots of sets holding them restore every string.
+     * @throws IllegalStateException if a set answers differently from a HashSet
+     */
+    private static void testSurrogateKeys() {
+        checkSurrogateKeys(new OffHeapStringSet(), "OffHeapStringSet");
+        try {
+            Path file = Files.createTempFile("surrogates", ".snapshot");
+            try {
+                OpenHashSet openHashSet = new OpenHashSet(SURROGATE_KEYS);
+                SetSnapshot.write(openHashSet, file);
+                checkRestoredSurrogateKeys(SetSnapshot.restore(file), "restored OpenHashSet", true);
+                checkRestoredSurrogateKeys(SetSnapshot.open(file), "mapped OpenHashSet", false);
+                ClosedHashSet closedHashSet = new ClosedHashSet(SURROGATE_KEYS);
+                SetSnapshot.write(closedHashSet, file);
+                checkRestoredSurrogateKeys(SetSnapshot.restore(file), "restored ClosedHashSet", true);
+                checkRestoredSurrogateKeys(SetSnapshot.open(file), "mapped ClosedHashSet", false);
+            } finally {
+                Files.delete(file);
+            }
+        } catch (java.io.IOException e) {
+            System.out.println("Can't write a snapshot: " + e.getMessage());
+        }
+        System.out.println("");
+    }
+
+
+    /**
+     * A helper method to testSurrogateKeys that checks that a set restored from a snapshot of all the
+     * surrogate keys holds exactly them, and that it can delete them
+     * @param dataStructure  the restored data structure
+     * @param name  the name of the data structure
+     * @param modifiable  false for a read-only data structure (it is not asked to delete)
+     * @throws IllegalStateException if a key is missing or can't be deleted
+     */
+    private static void checkRestoredSurrogateKeys(SimpleSet dataStructure, String name, boolean modifiable) {
+        for (String key : SURROGATE_KEYS) {
+            checkAnswer(name + ".contains", key, dataStructure.contains(key), true);
+        }
+        checkAnswer(name + ".contains", "\uDBFFx", dataStructure.contains("\uDBFFx"), false);
+        if (dataStructure.size() != SURROGATE_KEYS.length) {
+            throw new IllegalStateException(name + " has " + dataStructure.size() + " values instead of " +
+                    SURROGATE_KEYS.length);
+        }
+        if (modifiable) {
+            for (String key : SURROGATE_KEYS) {
+                checkAnswer(name + ".delete", key, dataStructure.delete(key), true);
+            }
+            if (dataStructure.size() != 0) {
+                throw new IllegalStateException(name + " has " + dataStructure.size() + " values left");
+            }
+        }
+        System.out.println(name + " restored the " + SURROGATE_KEYS.length + " surrogate keys.    ");
+    }
+
+
+    /**
+     * A helper method to testSurrogateKeys that adds, looks up and deletes the surrogate keys in a set and in
+     * a HashSet, and compares every answer
+     * @param dataStructure  the (empty) data structure we want to check
+     * @param name  the name of the data structure
+     * @throws IllegalStateException if the set answers differently from the HashSet
+     */
+    private static void checkSurrogateKeys(SimpleSet dataStructure, String name) {
+        HashSet<String> expected = new HashSet<String>();
+        for (int i = 0; i < SURROGATE_KEYS.length; i += 2) {  // every other key, so the rest are missing
+            checkAnswer(name + ".add", SURROGATE_KEYS[i], dataStructure.add(SURROGATE_KEYS[i]),
+                    expected.add(SURROGATE_KEYS[i]));
+        }
+        for (String key : SURROGATE_KEYS) {
+            checkAnswer(name + ".contains", key, dataStructure.contains(key), expected.contains(key));
+        }
+        for (int i = 1; i < SURROGATE_KEYS.length; i += 2) {
+            checkAnswer(name + ".add", SURROGATE_KEYS[i], dataStructure.add(SURROGATE_KEYS[i]),
+                    expected.add(SURROGATE_KEYS[i]));
+        }
+        for (int i = 0; i < SURROGATE_KEYS.length; i += 3) {
+            checkAnswer(name + ".delete", SURROGATE_KEYS[i], dataStructure.delete(SURROGATE_KEYS[i]),
+                    expected.remove(SURROGATE_KEYS[i]));
+        }
+        for (String key : SURROGATE_KEYS) {
+            checkAnswer(name + ".contains", key, dataStructure.contains(key), expected.contains(key));
+        }
+        if (dataStructure.size() != expected.size()) {
+            throw new IllegalStateException(name + " has " + dataStructure.size() + " values instead of " +
+                    expected.size());
+        }
+        System.out.println(name + " tells the " + SURROGATE_KEYS.length + " surrogate keys apart.    ");
+    }
+
+
+    /**
+     * A helper method to checkSurrogateKeys that compares an answer of a set with the answer of a HashSet
+     * @param operation  the name of the operation
+     * @param key  the key of the operation
+     * @param answer  the answer of the set
+     * @param expected  the answer of the HashSet
+     * @throws IllegalStateException if the answers differ
+     */
+    private static void checkAnswer(String operation, String key, boolean answer, boolean expected) {
+        if (answer != expected) {
+            throw new IllegalStateException(operation + "(\"" + escape(key) + "\") returned " + answer);
+        }
+    }
+
+
+    /**
+     * @param key  a string
+     * @return the string with every char outside ASCII written as a unicode escape
+     */
+    private static String escape(String key) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : key.toCharArray()) {
+            escaped.append(c < 0x80 ? String.valueOf(c) : String.format("\\u%04X", (int) c));
+        }
+        return escaped.toString();
+    }
+
+
+    /**
+     * Checks retainAll of OpenHashSet and ClosedHashSet with a smaller set that is a facade over a list holding
+     * duplicates: the strings kept are collected from the list, so each must still be added only once.
+     * @throws IllegalStateException if a set keeps the wrong strings or has a wrong size
+     */
+    private static void testRetainAllWithDuplicates() {
+        String[] values = {"a", "b", "c", "d", "e", "f"};
+        LinkedList<String> list = new LinkedList<String>(Arrays.asList("a", "a", "b", "b", "x"));
+        OpenHashSet openHashSet = new OpenHashSet(values);
+        checkRetained(openHashSet, openHashSet.retainAll(new CollectionFacadeSet(list, false)), "OpenHashSet");
+        ClosedHashSet closedHashSet = new ClosedHashSet(values);
+        checkRetained(closedHashSet, closedHashSet.retainAll(new CollectionFacadeSet(list, false)),
+                "ClosedHashSet");
+        System.out.println("");
+    }
+
+
+    /**
+     * A helper method to testRetainAllWithDuplicates that checks a set kept "a" and "b" once each
+     * @param dataStructure  the data structure after retainAll
+     * @param removed  the number of strings retainAll returned
+     * @param name  the name of the data structure
+     * @throws IllegalStateException if the set keeps the wrong strings or has a wrong size
+     */
+    private static void checkRetained(SimpleSet dataStructure, int removed, String name) {
+        if (removed != 4 || dataStructure.size() != 2 || !dataStructure.contains("a") ||
+                !dataStructure.contains("b")) {
+            throw new IllegalStateException(name + ".retainAll of a list with duplicates removed " + removed +
+                    " strings and left " + dataStructure.size());
+        }
+        dataStructure.delete("a");
+        if (dataStructure.contains("a") || dataStructure.size() != 1) {
+            throw new IllegalStateException(name + " kept a duplicate of 'a' after retainAll");
+        }
+        System.out.println(name + ".retainAll of a list with duplicates kept each string once.    ");
+    }
+
+
+    /**
+     * Compares the time it takes to load a data file into an OpenHashSet by reading it whole with
+     * Ex3Utils.file2array, by streaming it with KeyFileLoader, and by streaming it with all the cores.
+     * @param fileName  the path of the data file
+     * @param dataName  a string representation of the data we want to load
+     */
+    private static void testStreamingLoad(String fileName, String dataName) {
+        Path file = Paths.get(fileName);
+        int cores = Runtime.getRuntime().availableProcessors();
+        try {
+            long timeBefore = System.nanoTime();
+            new OpenHashSet().addAll(Ex3Utils.file2array(fileName));
+            long arrayTime = System.nanoTime() - timeBefore;
+            timeBefore = System.nanoTime();
+            KeyFileLoader.load(file, new OpenHashSet());
+            long streamTime = System.nanoTime() - timeBefore;
+            timeBefore = System.nanoTime();
+            KeyFileLoader.loadParallel(file, new OpenHashSet(), cores);
+            long parallelTime = System.nanoTime() - timeBefore;
+            System.out.println("OpenHashSet loaded from " + dataName + " with file2array: " +
+                    arrayTime / 1000000 + "ms, streaming: " + streamTime / 1000000 + "ms, streaming with " +
+                    cores + " threads: " + parallelTime / 1000000 + "ms.    ");
+        } catch (java.io.IOException e) {
+            System.out.println("Can't read " + fileName + ": " + e.getMessage());
+        }
+        System.out.println("");
+    }
+
+
+    /**
+     * Prints the probe-length statistics of a closed-hashing set, the metrics of an instrumented hash-set, or
+     * the statistics of a Bloom filter (and resets them for the next test).
+     * @param dataStructure  the data structure that was just tested
+     */
+    private static void printProbeStatistics(SimpleSet dataStructure) {
+        if (dataStructure instanceof ClosedHashSet) {
+            ClosedHashSet closedHashSet = (ClosedHashSet) dataStructure;
+            System.out.printf("    probes per lookup: average %.2f, max %d%n",
+                    closedHashSet.getAverageProbeLength(), closedHashSet.getMaxProbeLength());
+            closedHashSet.resetProbeStatistics();
+        }
+        if (dataStructure instanceof SimpleHashSet && ((SimpleHashSet) dataStructure).getMetrics() != null) {
+            HashSetMetrics metrics = ((SimpleHashSet) dataStructure).getMetrics();
+            System.out.println("    metrics: " + metrics);
+            metrics.reset();
+        }
+        if (dataStructure instanceof BloomFilterSet) {
+            BloomFilterSet bloomFilterSet = (BloomFilterSet) dataStructure;
+            System.out.printf("    filter: answered %d lookups, false-positive rate %.4f (expected %.4f)%n",
+                    bloomFilterSet.getFilteredLookups(), bloomFilterSet.getFalsePositiveRate(),
+                    bloomFilterSet.getExpectedFalsePositiveRate());
+            bloomFilterSet.resetStatistics();
+        }
+    }
+
+
     /**
      * This method add a givien data to a given data structure
      * @param data  the data we want to add
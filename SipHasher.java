@@ -0,0 +1,115 @@
+import java.security.SecureRandom;
+
+/**
+ * A seeded keyed hash (SipHash-2-4 over the UTF-16 chars of the string) for untrusted input. Unlike
+ * String.hashCode(), an attacker who does not know the key cannot build a set of strings that collide, so
+ * use it for sets filled from input you do not control. It is slower than SpreadingHasher since the hash is
+ * not cached by the string.
+ */
+public class SipHasher implements StringHasher {
+
+    /** the first half of the 128 bit key */
+    private final long k0;
+
+    /** the second half of the 128 bit key */
+    private final long k1;
+
+
+    /**
+     * Constructs a hasher with a random key.
+     */
+    public SipHasher() {
+        SecureRandom random = new SecureRandom();
+        this.k0 = random.nextLong();
+        this.k1 = random.nextLong();
+    }
+
+
+    /**
+     * Constructs a hasher with a given key (the same key always gives the same hashes).
+     * @param k0  the first half of the 128 bit key
+     * @param k1  the second half of the 128 bit key
+     */
+    public SipHasher(long k0, long k1) {
+        this.k0 = k0;
+        this.k1 = k1;
+    }
+
+
+    /**
+     * Computes the hash of a string.
+     * @param value  the string to hash
+     * @return the low bits of the SipHash of the string folded with its high bits
+     */
+    @Override
+    public int hash(String value) {
+        return hash((CharSequence) value);
+    }
+
+
+    /**
+     * Computes the hash of a sequence of chars, without creating a string.
+     * @param value  the chars to hash
+     * @return the same hash as the string of the chars
+     */
+    @Override
+    public int hash(CharSequence value) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+        int length = value.length();
+        int end = length - (length & 3);
+        for (int i = 0; i < end; i += 4) {  // four chars (8 bytes) per message word
+            long m = value.charAt(i) | (long) value.charAt(i + 1) << 16 | (long) value.charAt(i + 2) << 32
+                    | (long) value.charAt(i + 3) << 48;
+            v3 ^= m;
+            for (int round = 0; round < 2; round++) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+        long last = (long) (length * 2) << 56;  // the last word holds the remaining chars and the byte length
+        for (int i = end; i < length; i++) {
+            last |= (long) value.charAt(i) << (16 * (i - end));
+        }
+        v3 ^= last;
+        for (int round = 0; round < 2; round++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v0 ^= last;
+        v2 ^= 0xff;
+        for (int round = 0; round < 4; round++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        long result = v0 ^ v1 ^ v2 ^ v3;
+        return (int) (result ^ (result >>> 32));
+    }
+
+
+    /**
+     * @return the first half of the 128 bit key
+     */
+    public long getK0() {
+        return k0;
+    }
+
+
+    /**
+     * @return the second half of the 128 bit key
+     */
+    public long getK1() {
+        return k1;
+    }
+
+
+}
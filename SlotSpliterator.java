@@ -0,0 +1,123 @@
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A fail-fast Spliterator over the strings of a SlotTable. It covers a range of slots and splits it in half,
+ * so a parallel stream over a set reads the backing array directly, each thread in its own range. Only the
+ * spliterator of the whole table is SIZED; the size of a half is an estimate.
+ */
+class SlotSpliterator implements Spliterator<String> {
+
+    /** the table */
+    private final SlotTable table;
+
+    /** the next slot to visit */
+    private int index;
+
+    /** the slot after the last slot of the range */
+    private final int fence;
+
+    /** the estimated number of strings left */
+    private int estimate;
+
+    /** true while the spliterator covers the whole table, so its size is exact */
+    private boolean whole;
+
+    /** the modCount of the table when the spliterator was created */
+    private final int expectedModCount;
+
+    /** the strings of the current slot that tryAdvance didn't pass on yet */
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+
+
+    /**
+     * Creates a spliterator over all the strings of a table
+     * @param table  the table
+     */
+    SlotSpliterator(SlotTable table) {
+        this(table, 0, table.slotCount(), table.size(), table.modCount());
+        this.whole = true;
+    }
+
+
+    /**
+     * Creates a spliterator over a range of slots of a table
+     * @param table  the table
+     * @param origin  the first slot of the range
+     * @param fence  the slot after the last slot of the range
+     * @param estimate  the estimated number of strings in the range
+     * @param expectedModCount  the modCount of the table
+     */
+    private SlotSpliterator(SlotTable table, int origin, int fence, int estimate, int expectedModCount) {
+        this.table = table;
+        this.index = origin;
+        this.fence = fence;
+        this.estimate = estimate;
+        this.expectedModCount = expectedModCount;
+    }
+
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        checkForComodification();
+        while (pending.isEmpty() && index < fence) {
+            table.forEachInSlot(index++, pending::add);
+        }
+        if (pending.isEmpty()) {
+            return false;
+        }
+        action.accept(pending.poll());
+        return true;
+    }
+
+
+    @Override
+    public void forEachRemaining(Consumer<? super String> action) {
+        while (!pending.isEmpty()) {
+            action.accept(pending.poll());
+        }
+        for (; index < fence; index++) {
+            checkForComodification();
+            table.forEachInSlot(index, action);
+        }
+        checkForComodification();
+    }
+
+
+    @Override
+    public Spliterator<String> trySplit() {
+        int mid = (index + fence) >>> 1;
+        if (index >= mid || !pending.isEmpty()) {
+            return null;
+        }
+        estimate >>>= 1;
+        whole = false;
+        SlotSpliterator prefix = new SlotSpliterator(table, index, mid, estimate, expectedModCount);
+        index = mid;
+        return prefix;
+    }
+
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+
+    @Override
+    public int characteristics() {
+        return (whole ? SIZED : 0) | DISTINCT | NONNULL;
+    }
+
+
+    /** throws a ConcurrentModificationException if the table changed since the spliterator was created */
+    private void checkForComodification() {
+        if (table.modCount() != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+
+}
@@ -0,0 +1,36 @@
+import java.util.function.Consumer;
+
+/**
+ * A hash table whose strings can be visited slot by slot (a slot is a cell or a bucket of the table), so its
+ * iteration can be split by ranges of slots (see SlotSpliterator).
+ */
+interface SlotTable {
+
+    /**
+     * Finishes a rehash in progress (so the slots stay where they are until the next change of the set)
+     * @return the number of slots of the table
+     */
+    int slotCount();
+
+
+    /**
+     * Passes the strings of a slot to an action
+     * @param slot  the index of the slot
+     * @param action  the action
+     */
+    void forEachInSlot(int slot, Consumer<? super String> action);
+
+
+    /**
+     * @return the number of structural changes of the table so far (the iterators fail fast when it changes)
+     */
+    int modCount();
+
+
+    /**
+     * @return The number of elements currently in the table
+     */
+    int size();
+
+
+}
@@ -0,0 +1,62 @@
+/**
+ * The default hash-mixing stage: spreads the bits of String.hashCode() (which is cached by the string) with the
+ * murmur3 finalizer, so keys that only differ in their high bits land in different buckets.
+ */
+public class SpreadingHasher implements StringHasher {
+
+    /** the single instance of this hasher (it has no state) */
+    public static final SpreadingHasher INSTANCE = new SpreadingHasher();
+
+
+    /**
+     * Use INSTANCE instead
+     */
+    private SpreadingHasher() {
+    }
+
+
+    /**
+     * Computes the hash of a string.
+     * @param value  the string to hash
+     * @return the spread hashCode of the string
+     */
+    @Override
+    public int hash(String value) {
+        return spread(value.hashCode());
+    }
+
+
+    /**
+     * Computes the hash of a sequence of chars, without creating a string.
+     * @param value  the chars to hash
+     * @return the spread String.hashCode() of the chars
+     */
+    @Override
+    public int hash(CharSequence value) {
+        if (value instanceof String) {
+            return hash((String) value);
+        }
+        int h = 0;
+        for (int i = 0; i < value.length(); i++) {  // the same polynomial as String.hashCode()
+            h = 31 * h + value.charAt(i);
+        }
+        return spread(h);
+    }
+
+
+    /**
+     * spreads the bits of a hashCode with the murmur3 finalizer
+     * @param h  the hashCode
+     * @return the spread hash
+     */
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+
+}
@@ -0,0 +1,551 @@
+import java.util.Iterator;
+
+/**
+ * an ordered set of strings based on a B+-tree, in the order of String.compareTo (the order of a TreeSet).
+ * The strings are kept in leaves of up to 64 sorted keys that are linked to each other, so besides add,
+ * contains and delete the set answers first / last, floor / ceiling, and iterates a range or the strings that
+ * start with a prefix by walking the leaves. Each node is three arrays instead of one object per string, and the
+ * first chars of its keys are packed in longs (see BTreeNode), so a lookup touches a few contiguous arrays per
+ * level instead of the strings of a path of red-black tree entries. The data constructor sorts the data once and
+ * builds the tree bottom-up from packed leaves.
+ */
+public class StringBTreeSet implements SimpleSet, Iterable<String> {
+
+    /** the length of a range that the sort of the data constructor sorts by insertion */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /** the root of the tree (a leaf while the set fits in one) */
+    private BTreeNode root = new BTreeNode(true);
+
+    /** the current number of elements */
+    private int size = 0;
+
+    /** the number of structural changes, so iterators can fail fast */
+    private int modCount = 0;
+
+
+    /**
+     * A default constructor. Constructs a new, empty set.
+     */
+    public StringBTreeSet() {
+    }
+
+
+    /**
+     * Data constructor - builds the set from the sorted data at once. Duplicate values are ignored.
+     * @param data  Values to add to the set.
+     */
+    public StringBTreeSet(java.lang.String[] data) {
+        String[] sorted = data.clone();
+        long[] prefixes = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            prefixes[i] = BTreeNode.prefix(sorted[i]);
+        }
+        sort(sorted, prefixes, 0, sorted.length, sorted.clone(), prefixes.clone());
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (distinct == 0 || !sorted[distinct - 1].equals(sorted[i])) {
+                sorted[distinct] = sorted[i];
+                prefixes[distinct++] = prefixes[i];
+            }
+        }
+        if (distinct > 0) {
+            root = build(sorted, prefixes, distinct);
+            size = distinct;
+        }
+    }
+
+
+    /**
+     * Add a specified element to the set if it's not already in it.
+     *
+     * @param newValue New value to add to the set
+     * @return False iff newValue already exists in the set
+     */
+    @Override
+    public boolean add(String newValue) {
+        if (!insert(root, newValue, BTreeNode.prefix(newValue))) {
+            return false;
+        }
+        if (root.count > BTreeNode.MAX_KEYS) {  // the root was split: the tree grows a level
+            BTreeNode newRoot = new BTreeNode(false);
+            newRoot.children[0] = root;
+            root = newRoot;
+            split(newRoot, 0);
+        }
+        modCount++;
+        size++;
+        return true;
+    }
+
+
+    /**
+     * Look for a specified value in the set.
+     *
+     * @param searchVal Value to search for
+     * @return True iff searchVal is found in the set
+     */
+    @Override
+    public boolean contains(String searchVal) {
+        long prefix = BTreeNode.prefix(searchVal);
+        BTreeNode node = root;
+        while (!node.isLeaf()) {
+            node = node.children[node.childIndex(searchVal, prefix)];
+        }
+        return node.search(searchVal, prefix) >= 0;
+    }
+
+
+    /**
+     * Remove the input element from the set.
+     *
+     * @param toDelete Value to delete
+     * @return True iff toDelete is found and deleted
+     */
+    @Override
+    public boolean delete(String toDelete) {
+        if (!remove(root, toDelete, BTreeNode.prefix(toDelete))) {
+            return false;
+        }
+        if (!root.isLeaf() && root.count == 0) {  // the root lost its last separator: the tree shrinks a level
+            root = root.children[0];
+        }
+        modCount++;
+        size--;
+        return true;
+    }
+
+
+    /**
+     * @return The number of elements currently in the set
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * @return The smallest string of the set, or null if it is empty
+     */
+    public String first() {
+        BTreeNode node = root;
+        while (!node.isLeaf()) {
+            node = node.children[0];
+        }
+        return node.count == 0 ? null : node.keys[0];
+    }
+
+
+    /**
+     * @return The largest string of the set, or null if it is empty
+     */
+    public String last() {
+        BTreeNode node = root;
+        while (!node.isLeaf()) {
+            node = node.children[node.count];
+        }
+        return node.count == 0 ? null : node.keys[node.count - 1];
+    }
+
+
+    /**
+     * @param value  A string
+     * @return The largest string of the set that is smaller than or equal to value, or null if there is none
+     */
+    public String floor(String value) {
+        long prefix = BTreeNode.prefix(value);
+        BTreeNode node = root;
+        BTreeNode before = null;  // the nearest subtree left of the path, which holds the predecessor of its leaf
+        while (!node.isLeaf()) {
+            int child = node.childIndex(value, prefix);
+            if (child > 0) {
+                before = node.children[child - 1];
+            }
+            node = node.children[child];
+        }
+        int index = node.search(value, prefix);
+        if (index >= 0) {
+            return node.keys[index];
+        }
+        int insertion = -index - 1;
+        if (insertion > 0) {
+            return node.keys[insertion - 1];
+        }
+        if (before == null) {
+            return null;
+        }
+        while (!before.isLeaf()) {
+            before = before.children[before.count];
+        }
+        return before.keys[before.count - 1];
+    }
+
+
+    /**
+     * @param value  A string
+     * @return The smallest string of the set that is larger than or equal to value, or null if there is none
+     */
+    public String ceiling(String value) {
+        BTreeNode leaf = leafOf(value);
+        int index = leaf.search(value, BTreeNode.prefix(value));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        if (index == leaf.count) {  // every string of the leaf is smaller, the next leaf starts with the ceiling
+            leaf = leaf.next;
+            index = 0;
+        }
+        return leaf == null || leaf.count == 0 ? null : leaf.keys[index];
+    }
+
+
+    /**
+     * The strings of the set from one string (inclusive) to another (exclusive), in order. The iterators walk
+     * the leaves of the tree, and fail fast if the set is modified while they are used.
+     * @param from  The smallest string of the range, or null to start from the first string of the set
+     * @param to  The string the range ends before, or null to run to the last string of the set
+     * @return The strings of the range
+     */
+    public Iterable<String> range(String from, String to) {
+        return () -> {
+            BTreeNode leaf = root;
+            int index = 0;
+            if (from == null) {
+                while (!leaf.isLeaf()) {
+                    leaf = leaf.children[0];
+                }
+            } else {
+                leaf = leafOf(from);
+                index = leaf.search(from, BTreeNode.prefix(from));
+                if (index < 0) {
+                    index = -index - 1;
+                }
+            }
+            return new BTreeIterator(this, leaf, index, to);
+        };
+    }
+
+
+    /**
+     * The strings of the set that start with a prefix, in order
+     * @param prefix  The prefix (the empty string selects every string)
+     * @return The strings that start with the prefix
+     */
+    public Iterable<String> withPrefix(String prefix) {
+        return range(prefix, prefixEnd(prefix));
+    }
+
+
+    /**
+     * @return An iterator over all the strings of the set, in order
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return range(null, null).iterator();
+    }
+
+
+    /**
+     * @return the number of structural changes of the set
+     */
+    int modCount() {
+        return modCount;
+    }
+
+
+    /**
+     * @param prefix  a prefix
+     * @return the smallest string that is larger than every string that starts with the prefix, or null if
+     * there is none (the prefix is empty, or all its chars are Character.MAX_VALUE)
+     */
+    private static String prefixEnd(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+
+    /**
+     * @param value  a string
+     * @return the leaf whose range holds the string
+     */
+    private BTreeNode leafOf(String value) {
+        long prefix = BTreeNode.prefix(value);
+        BTreeNode node = root;
+        while (!node.isLeaf()) {
+            node = node.children[node.childIndex(value, prefix)];
+        }
+        return node;
+    }
+
+
+    /**
+     * Inserts a value into a subtree. A child that overflows (has one key too many) is split on the way back
+     * up, so only the root can be left overflowing.
+     * @param node  the root of the subtree
+     * @param value  the value
+     * @param prefix  the prefix of the value
+     * @return False iff the value already exists in the subtree
+     */
+    private boolean insert(BTreeNode node, String value, long prefix) {
+        int index = node.search(value, prefix);
+        if (node.isLeaf()) {
+            if (index >= 0) {  // to not allow duplicates
+                return false;
+            }
+            node.insertKey(-index - 1, value, prefix);
+            return true;
+        }
+        int child = index >= 0 ? index + 1 : -index - 1;
+        if (!insert(node.children[child], value, prefix)) {
+            return false;
+        }
+        if (node.children[child].count > BTreeNode.MAX_KEYS) {
+            split(node, child);
+        }
+        return true;
+    }
+
+
+    /**
+     * Splits an overflowing child in two halves, and puts the separator between them in the parent
+     * @param parent  the parent
+     * @param index  the index of the child in the parent
+     */
+    private static void split(BTreeNode parent, int index) {
+        BTreeNode left = parent.children[index];
+        BTreeNode right = new BTreeNode(left.isLeaf());
+        int mid = left.count / 2;
+        String separator;
+        long separatorPrefix;
+        if (left.isLeaf()) {  // the separator is a copy of the first key of the right leaf
+            left.moveTail(mid, right);
+            right.next = left.next;
+            left.next = right;
+            separator = right.keys[0];
+            separatorPrefix = right.prefixes[0];
+        } else {  // the middle separator moves up to the parent
+            separator = left.keys[mid];
+            separatorPrefix = left.prefixes[mid];
+            left.moveTail(mid + 1, right);
+            left.removeKey(mid);
+        }
+        parent.insertChild(index + 1, right);
+        parent.insertKey(index, separator, separatorPrefix);
+    }
+
+
+    /**
+     * Removes a value from a subtree. A child that underflows (has fewer than MIN_KEYS keys) is refilled
+     * from a sibling or merged with it on the way back up, so only the root can be left underflowing.
+     * @param node  the root of the subtree
+     * @param value  the value
+     * @param prefix  the prefix of the value
+     * @return True iff the value was found and removed
+     */
+    private boolean remove(BTreeNode node, String value, long prefix) {
+        int index = node.search(value, prefix);
+        if (node.isLeaf()) {
+            if (index < 0) {
+                return false;
+            }
+            node.removeKey(index);
+            return true;
+        }
+        int child = index >= 0 ? index + 1 : -index - 1;
+        if (!remove(node.children[child], value, prefix)) {
+            return false;
+        }
+        if (node.children[child].count < BTreeNode.MIN_KEYS) {
+            rebalance(node, child);
+        }
+        return true;
+    }
+
+
+    /**
+     * Refills an underflowing child with a key of a sibling that can spare one, or merges it with a sibling
+     * @param parent  the parent
+     * @param index  the index of the child in the parent
+     */
+    private static void rebalance(BTreeNode parent, int index) {
+        BTreeNode child = parent.children[index];
+        BTreeNode left = index > 0 ? parent.children[index - 1] : null;
+        BTreeNode right = index < parent.count ? parent.children[index + 1] : null;
+        if (left != null && left.count > BTreeNode.MIN_KEYS) {
+            int last = left.count - 1;
+            if (child.isLeaf()) {  // the last key of the left leaf moves over, and becomes the separator
+                child.insertKey(0, left.keys[last], left.prefixes[last]);
+                parent.keys[index - 1] = left.keys[last];
+                parent.prefixes[index - 1] = left.prefixes[last];
+            } else {  // rotate through the parent: the separator comes down, the last key of the left goes up
+                child.insertChild(0, left.children[last + 1]);
+                child.insertKey(0, parent.keys[index - 1], parent.prefixes[index - 1]);
+                parent.keys[index - 1] = left.keys[last];
+                parent.prefixes[index - 1] = left.prefixes[last];
+                left.children[last + 1] = null;
+            }
+            left.removeKey(last);
+        } else if (right != null && right.count > BTreeNode.MIN_KEYS) {
+            if (child.isLeaf()) {  // the first key of the right leaf moves over, its second becomes the separator
+                child.insertKey(child.count, right.keys[0], right.prefixes[0]);
+                right.removeKey(0);
+                parent.keys[index] = right.keys[0];
+                parent.prefixes[index] = right.prefixes[0];
+            } else {  // rotate through the parent: the separator comes down, the first key of the right goes up
+                child.children[child.count + 1] = right.children[0];
+                child.insertKey(child.count, parent.keys[index], parent.prefixes[index]);
+                parent.keys[index] = right.keys[0];
+                parent.prefixes[index] = right.prefixes[0];
+                right.removeChild(0);
+                right.removeKey(0);
+            }
+        } else if (left != null) {
+            merge(parent, index - 1);
+        } else {
+            merge(parent, index);
+        }
+    }
+
+
+    /**
+     * Merges a child with its right sibling, and removes the separator between them from the parent
+     * @param parent  the parent
+     * @param index  the index of the left child in the parent
+     */
+    private static void merge(BTreeNode parent, int index) {
+        BTreeNode left = parent.children[index];
+        BTreeNode right = parent.children[index + 1];
+        if (left.isLeaf()) {
+            left.next = right.next;
+        } else {  // the separator comes down between the keys of the two children
+            left.insertKey(left.count, parent.keys[index], parent.prefixes[index]);
+        }
+        right.moveTail(0, left);
+        parent.removeChild(index + 1);
+        parent.removeKey(index);
+    }
+
+
+    /**
+     * Merge sorts a range of strings together with their prefixes. Like a lookup, it compares the prefixes
+     * first and only calls compareTo when they are equal, so most comparisons don't reach into the strings.
+     * @param keys  the strings
+     * @param prefixes  the prefixes of the strings
+     * @param from  the first index of the range
+     * @param to  the index after the range
+     * @param keySource  a copy of the range of keys (it is overwritten)
+     * @param prefixSource  a copy of the range of prefixes (it is overwritten)
+     */
+    private static void sort(String[] keys, long[] prefixes, int from, int to, String[] keySource,
+                             long[] prefixSource) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                String key = keys[i];
+                long prefix = prefixes[i];
+                int j = i - 1;
+                for (; j >= from && compare(prefixes[j], keys[j], prefix, key) > 0; j--) {
+                    keys[j + 1] = keys[j];
+                    prefixes[j + 1] = prefixes[j];
+                }
+                keys[j + 1] = key;
+                prefixes[j + 1] = prefix;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(keySource, prefixSource, from, mid, keys, prefixes);  // the halves are sorted into the copies,
+        sort(keySource, prefixSource, mid, to, keys, prefixes);  // and merged back (the roles swap each level)
+        for (int i = from, left = from, right = mid; i < to; i++) {
+            if (right == to || left < mid
+                    && compare(prefixSource[left], keySource[left], prefixSource[right], keySource[right]) <= 0) {
+                keys[i] = keySource[left];
+                prefixes[i] = prefixSource[left++];
+            } else {
+                keys[i] = keySource[right];
+                prefixes[i] = prefixSource[right++];
+            }
+        }
+    }
+
+
+    /**
+     * Compares two strings by their prefixes, and by compareTo if the prefixes are equal
+     * @return a negative number, zero or a positive number as the first string is smaller, equal or larger
+     */
+    private static int compare(long prefix, String key, long otherPrefix, String otherKey) {
+        int cmp = Long.compare(prefix, otherPrefix);
+        return cmp != 0 ? cmp : key.compareTo(otherKey);
+    }
+
+
+    /**
+     * Builds a tree bottom-up from sorted, distinct strings: the leaves are filled in order and linked, and
+     * each level of inner nodes is built over the level below it. The nodes of a level share its strings
+     * (or children) evenly, so none of them has fewer than MIN_KEYS keys.
+     * @param sorted  the strings, sorted and distinct
+     * @param prefixes  the prefixes of the strings
+     * @param count  the number of strings
+     * @return the root of the tree
+     */
+    private static BTreeNode build(String[] sorted, long[] prefixes, int count) {
+        int leaves = (count + BTreeNode.MAX_KEYS - 1) / BTreeNode.MAX_KEYS;
+        BTreeNode[] level = new BTreeNode[leaves];
+        int start = 0;
+        for (int i = 0; i < leaves; i++) {
+            int end = (int) ((long) count * (i + 1) / leaves);
+            BTreeNode leaf = new BTreeNode(true);
+            for (int j = start; j < end; j++) {
+                leaf.keys[j - start] = sorted[j];
+                leaf.prefixes[j - start] = prefixes[j];
+            }
+            leaf.count = end - start;
+            if (i > 0) {
+                level[i - 1].next = leaf;
+            }
+            level[i] = leaf;
+            start = end;
+        }
+        while (level.length > 1) {
+            int parents = (level.length + BTreeNode.MAX_KEYS) / (BTreeNode.MAX_KEYS + 1);
+            BTreeNode[] upper = new BTreeNode[parents];
+            start = 0;
+            for (int i = 0; i < parents; i++) {
+                int end = (int) ((long) level.length * (i + 1) / parents);
+                BTreeNode parent = new BTreeNode(false);
+                parent.children[0] = level[start];
+                for (int j = start + 1; j < end; j++) {  // the separator of a child is its smallest string
+                    String smallest = smallest(level[j]);
+                    parent.children[j - start] = level[j];
+                    parent.keys[j - start - 1] = smallest;
+                    parent.prefixes[j - start - 1] = BTreeNode.prefix(smallest);
+                }
+                parent.count = end - start - 1;
+                upper[i] = parent;
+                start = end;
+            }
+            level = upper;
+        }
+        return level[0];
+    }
+
+
+    /**
+     * @param node  the root of a subtree
+     * @return the smallest string of the subtree
+     */
+    private static String smallest(BTreeNode node) {
+        while (!node.isLeaf()) {
+            node = node.children[0];
+        }
+        return node.keys[0];
+    }
+
+
+}
@@ -0,0 +1,23 @@
+/**
+ * The hash-mixing stage of a SimpleHashSet: maps a string to the hash that the set clamps to a table index.
+ */
+public interface StringHasher {
+
+    /**
+     * Computes the hash of a string.
+     * @param value  the string to hash
+     * @return the hash of the string (all 32 bits should be well mixed, since the table only uses the low bits)
+     */
+    int hash(String value);
+
+    /**
+     * Computes the hash of a sequence of chars, the same as the hash of the string of these chars. Hashers
+     * override this to hash the chars where they are, without creating the string.
+     * @param value  the chars to hash
+     * @return the hash of value.toString()
+     */
+    default int hash(CharSequence value) {
+        return hash(value.toString());
+    }
+
+}
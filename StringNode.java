@@ -0,0 +1,30 @@
+/**
+ * a node in a chain of strings (a bucket of OpenHashSet). Each element costs a single node object, with no
+ * wrapper list around the chain.
+ */
+public class StringNode {
+
+    /** the hash of the string (compared before calling equals, and reused on rehash) */
+    final int hash;
+
+    /** the string held by this node */
+    final String value;
+
+    /** the next node in the chain (null at the end of the chain) */
+    StringNode next;
+
+
+    /**
+     * Constructs a node that holds a given string
+     * @param hash  the hash of the string
+     * @param value  the string this node holds
+     * @param next  the next node in the chain
+     */
+    StringNode(int hash, String value, StringNode next) {
+        this.hash = hash;
+        this.value = value;
+        this.next = next;
+    }
+
+
+}
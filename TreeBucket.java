@@ -0,0 +1,22 @@
+import java.util.TreeSet;
+
+/**
+ * a treeified bucket of OpenHashSet. When a chain grows long (many strings whose hashes collide) its strings
+ * are moved to a red-black tree, so a lookup in the bucket takes O(log n) string comparisons instead of O(n).
+ * It takes the place of the first node of the chain in the table, and holds no value of its own.
+ */
+public class TreeBucket extends StringNode {
+
+    /** the strings of the bucket, ordered by String.compareTo */
+    final TreeSet<String> tree = new TreeSet<>();
+
+
+    /**
+     * Constructs an empty tree bucket
+     */
+    TreeBucket() {
+        super(0, null, null);
+    }
+
+
+}
@@ -0,0 +1,319 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation-free UTF-8 helpers: strings are encoded one code point at a time, so they can be hashed and
+ * compared with stored UTF-8 bytes without creating a byte array. The encoding is the same as
+ * String.getBytes(UTF_8), except that an unpaired surrogate is encoded as its own 3 byte sequence (as in
+ * WTF-8) instead of '?', so two different strings never have the same bytes.
+ */
+public class Utf8 {
+
+    /** the initial value of the FNV-1a hash */
+    private static final int FNV_OFFSET = 0x811c9dc5;
+
+    /** the multiplier of the FNV-1a hash */
+    private static final int FNV_PRIME = 0x01000193;
+
+
+    /**
+     * A utility class
+     */
+    private Utf8() {
+    }
+
+
+    /**
+     * Encodes the code point that starts at a given char of a string (an unpaired surrogate is encoded like
+     * the other chars of its range, as 3 bytes from ED A0 80 to ED BF BF).
+     * @param s  the string
+     * @param i  the index of the char
+     * @return the (1 to 4) bytes of the code point in bits 0-31 (first byte lowest), the number of bytes in
+     * bits 32-35 and the number of chars the code point takes (1 or 2) in bits 36-39
+     */
+    static long encodeAt(CharSequence s, int i) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+            return c | 1L << 32 | 1L << 36;
+        }
+        if (c < 0x800) {
+            return (0xC0 | c >> 6) | (0x80 | c & 0x3F) << 8 | 2L << 32 | 1L << 36;
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(i + 1));
+            return (0xF0 | cp >> 18) | (0x80 | cp >> 12 & 0x3F) << 8 | (0x80 | cp >> 6 & 0x3F) << 16
+                    | (long) (0x80 | cp & 0x3F) << 24 | 4L << 32 | 2L << 36;
+        }
+        return (0xE0 | c >> 12) | (0x80 | c >> 6 & 0x3F) << 8 | (0x80 | c & 0x3F) << 16 | 3L << 32 | 1L << 36;
+    }
+
+
+    /**
+     * @param s  a string
+     * @return the number of bytes of its UTF-8 encoding
+     */
+    public static int encodedLength(CharSequence s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); ) {
+            long encoded = encodeAt(s, i);
+            length += (int) (encoded >>> 32) & 0xF;
+            i += (int) (encoded >>> 36);
+        }
+        return length;
+    }
+
+
+    /**
+     * Hashes the UTF-8 encoding of a string (the same hash as hash(byte[], int, int) of its bytes)
+     * @param s  a string
+     * @return the hash
+     */
+    public static int hash(CharSequence s) {
+        int h = FNV_OFFSET;
+        for (int i = 0; i < s.length(); ) {
+            long encoded = encodeAt(s, i);
+            int bytes = (int) (encoded >>> 32) & 0xF;
+            for (int b = 0; b < bytes; b++) {
+                h = (h ^ (int) (encoded >>> (8 * b)) & 0xFF) * FNV_PRIME;
+            }
+            i += (int) (encoded >>> 36);
+        }
+        return finish(h);
+    }
+
+
+    /**
+     * Hashes UTF-8 bytes
+     * @param bytes  an array holding the bytes
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @return the hash
+     */
+    public static int hash(byte[] bytes, int offset, int length) {
+        int h = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ bytes[i] & 0xFF) * FNV_PRIME;
+        }
+        return finish(h);
+    }
+
+
+    /**
+     * spreads the bits of an FNV-1a hash (with the murmur3 finalizer)
+     * @param h  the hash
+     * @return the spread hash
+     */
+    private static int finish(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ h >>> 16;
+    }
+
+
+    /**
+     * Compares a string with UTF-8 bytes stored in a buffer
+     * @param s  the string
+     * @param buffer  the buffer
+     * @param position  the position of the first byte in the buffer
+     * @param length  the number of bytes
+     * @return true iff the UTF-8 encoding of the string is exactly these bytes
+     */
+    public static boolean equals(CharSequence s, ByteBuffer buffer, int position, int length) {
+        int end = position + length;
+        for (int i = 0; i < s.length(); ) {
+            long encoded = encodeAt(s, i);
+            int bytes = (int) (encoded >>> 32) & 0xF;
+            if (position + bytes > end) {
+                return false;
+            }
+            for (int b = 0; b < bytes; b++) {
+                if (buffer.get(position++) != (byte) (encoded >>> (8 * b))) {
+                    return false;
+                }
+            }
+            i += (int) (encoded >>> 36);
+        }
+        return position == end;
+    }
+
+
+    /**
+     * Compares UTF-8 bytes of an array with UTF-8 bytes stored in a buffer
+     * @param bytes  the array
+     * @param offset  the index of the first byte in the array
+     * @param length  the number of bytes in the array
+     * @param buffer  the buffer
+     * @param position  the position of the first byte in the buffer
+     * @param storedLength  the number of bytes in the buffer
+     * @return true iff the bytes are the same
+     */
+    public static boolean equals(byte[] bytes, int offset, int length, ByteBuffer buffer, int position,
+                                 int storedLength) {
+        if (length != storedLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != buffer.get(position + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Decodes UTF-8 bytes into chars, the same chars as new String(bytes, UTF_8) for well-formed bytes
+     * @param bytes  an array holding the bytes
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @param chars  the array to decode into (at least length chars long)
+     * @return the number of chars, or -1 if the bytes are not well-formed UTF-8 (new String would replace the
+     * malformed sequences with U+FFFD)
+     */
+    static int decode(byte[] bytes, int offset, int length, char[] chars) {
+        return decode(bytes, offset, length, chars, false);
+    }
+
+
+    /**
+     * Decodes UTF-8 bytes into chars
+     * @param bytes  an array holding the bytes
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @param chars  the array to decode into (at least length chars long)
+     * @param surrogates  true to decode the 3 byte sequences of unpaired surrogates written by encode
+     * @return the number of chars, or -1 if the bytes are malformed
+     */
+    private static int decode(byte[] bytes, int offset, int length, char[] chars, boolean surrogates) {
+        int count = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; ) {
+            int b0 = bytes[i] & 0xFF;
+            switch (sequenceLength(bytes, i, end, surrogates)) {
+                case 1:
+                    chars[count++] = (char) b0;
+                    break;
+                case 2:
+                    chars[count++] = (char) ((b0 & 0x1F) << 6 | bytes[i + 1] & 0x3F);
+                    break;
+                case 3:
+                    chars[count++] = (char) ((b0 & 0x0F) << 12 | (bytes[i + 1] & 0x3F) << 6 | bytes[i + 2] & 0x3F);
+                    break;
+                case 4:
+                    int cp = (b0 & 0x07) << 18 | (bytes[i + 1] & 0x3F) << 12 | (bytes[i + 2] & 0x3F) << 6
+                            | bytes[i + 3] & 0x3F;
+                    chars[count++] = Character.highSurrogate(cp);
+                    chars[count++] = Character.lowSurrogate(cp);
+                    break;
+                default:
+                    return -1;
+            }
+            i += b0 < 0x80 ? 1 : b0 < 0xE0 ? 2 : b0 < 0xF0 ? 3 : 4;
+        }
+        return count;
+    }
+
+
+    /**
+     * @param bytes  an array holding the bytes
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @return true iff the bytes are well-formed UTF-8 (what new String(bytes, UTF_8) decodes without
+     * replacing anything)
+     */
+    static boolean isWellFormed(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; ) {
+            int sequence = sequenceLength(bytes, i, end, false);
+            if (sequence == -1) {
+                return false;
+            }
+            i += sequence;
+        }
+        return true;
+    }
+
+
+    /**
+     * @param bytes  an array holding UTF-8 bytes
+     * @param i  the index of the first byte of a code point
+     * @param end  the index after the last byte
+     * @param surrogates  true to accept the 3 byte sequence of a surrogate
+     * @return the number of bytes (1 to 4) of the well-formed code point that starts at i, or -1 if the bytes
+     * there are malformed, overlong, a surrogate (unless accepted), above U+10FFFF or cut off by end
+     */
+    private static int sequenceLength(byte[] bytes, int i, int end, boolean surrogates) {
+        int b0 = bytes[i] & 0xFF;
+        if (b0 < 0x80) {
+            return 1;
+        }
+        if (b0 >= 0xC2 && b0 <= 0xDF && i + 1 < end && isContinuation(bytes[i + 1], 0x80, 0xBF)) {
+            return 2;
+        }
+        if (b0 >= 0xE0 && b0 <= 0xEF && i + 2 < end  // E0 is never overlong, ED never a surrogate
+                && isContinuation(bytes[i + 1], b0 == 0xE0 ? 0xA0 : 0x80, b0 == 0xED && !surrogates ? 0x9F : 0xBF)
+                && isContinuation(bytes[i + 2], 0x80, 0xBF)) {
+            return 3;
+        }
+        if (b0 >= 0xF0 && b0 <= 0xF4 && i + 3 < end  // F0 is never overlong, F4 never above U+10FFFF
+                && isContinuation(bytes[i + 1], b0 == 0xF0 ? 0x90 : 0x80, b0 == 0xF4 ? 0x8F : 0xBF)
+                && isContinuation(bytes[i + 2], 0x80, 0xBF) && isContinuation(bytes[i + 3], 0x80, 0xBF)) {
+            return 4;
+        }
+        return -1;
+    }
+
+
+    /**
+     * @param b  a byte
+     * @param min  the smallest value the byte may have
+     * @param max  the largest value the byte may have
+     * @return true iff the byte (as an unsigned value) is between min and max
+     */
+    private static boolean isContinuation(byte b, int min, int max) {
+        int value = b & 0xFF;
+        return value >= min && value <= max;
+    }
+
+
+    /**
+     * Decodes UTF-8 bytes stored in a buffer by encode, including the unpaired surrogates, so the string is
+     * exactly the one that was encoded
+     * @param buffer  the buffer
+     * @param position  the position of the first byte in the buffer
+     * @param length  the number of bytes
+     * @return the decoded string (with malformed sequences replaced, as by new String(bytes, UTF_8))
+     */
+    public static String decode(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        char[] chars = new char[length];
+        int decoded = decode(bytes, 0, length, chars, true);
+        if (decoded == -1) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new String(chars, 0, decoded);
+    }
+
+
+    /**
+     * Writes the UTF-8 encoding of a string to a buffer
+     * @param s  the string
+     * @param buffer  the buffer
+     * @param position  the position of the first byte in the buffer
+     */
+    public static void encode(CharSequence s, ByteBuffer buffer, int position) {
+        for (int i = 0; i < s.length(); ) {
+            long encoded = encodeAt(s, i);
+            int bytes = (int) (encoded >>> 32) & 0xF;
+            for (int b = 0; b < bytes; b++) {
+                buffer.put(position++, (byte) (encoded >>> (8 * b)));
+            }
+            i += (int) (encoded >>> 36);
+        }
+    }
+
+
+}